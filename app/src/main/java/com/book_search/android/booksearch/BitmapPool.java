@@ -0,0 +1,150 @@
+package com.book_search.android.booksearch;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A pool of bitmaps that are no longer displayed or cached and can be decoded into
+ * again through {@link android.graphics.BitmapFactory.Options#inBitmap}.
+ *
+ * Bitmaps are kept in buckets keyed by their allocation size. The pool is bounded by
+ * the total number of bytes it holds and drops the largest bitmaps first when full.
+ */
+
+public class BitmapPool {
+
+    //Largest allocation, relative to the request, that is handed out for reuse
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    //Reusable bitmaps, bucketed by allocation size
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<>();
+
+    //Maximum number of bytes the pool may hold
+    private final int mMaxSize;
+
+    //Number of bytes the pool currently holds
+    private int mSize;
+
+    /**
+     * Constructs a new BitmapPool
+     * @param maxSize is the maximum number of bytes held by the pool
+     */
+    public BitmapPool(int maxSize){
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Adds a bitmap that nothing references anymore to the pool
+     */
+    public synchronized void put(Bitmap bitmap){
+        if(bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()){
+            return;
+        }
+        int size = allocationSize(bitmap);
+        if(size > mMaxSize){
+            return;
+        }
+
+        LinkedList<Bitmap> bucket = mBuckets.get(size);
+        if(bucket == null){
+            bucket = new LinkedList<>();
+            mBuckets.put(size, bucket);
+        }
+        bucket.add(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Removes and returns a bitmap that can be decoded into for an image of the given
+     * size, or null if the pool has none
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config){
+        int needed = width * height * bytesPerPixel(config);
+
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+            //Any bitmap that is at least as large can be reconfigured
+            Map.Entry<Integer, LinkedList<Bitmap>> entry = mBuckets.ceilingEntry(needed);
+            while(entry != null && entry.getKey() <= needed * MAX_SIZE_MULTIPLE){
+                Bitmap bitmap = entry.getValue().peekFirst();
+                if(bitmap != null){
+                    remove(entry.getKey(), bitmap);
+                    return bitmap;
+                }
+                entry = mBuckets.higherEntry(entry.getKey());
+            }
+            return null;
+        }
+
+        //Before KitKat the bitmap has to match the decoded image exactly
+        LinkedList<Bitmap> bucket = mBuckets.get(needed);
+        if(bucket != null){
+            for(Bitmap bitmap : bucket){
+                if(bitmap.getWidth() == width && bitmap.getHeight() == height
+                        && bitmap.getConfig() == config){
+                    remove(needed, bitmap);
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Drops every bitmap in the pool
+     */
+    public synchronized void clear(){
+        trimToSize(0);
+    }
+
+    /**
+     * Returns the number of bytes held by the pool
+     */
+    public synchronized int size(){
+        return mSize;
+    }
+
+    private void remove(int size, Bitmap bitmap){
+        LinkedList<Bitmap> bucket = mBuckets.get(size);
+        bucket.remove(bitmap);
+        if(bucket.isEmpty()){
+            mBuckets.remove(size);
+        }
+        mSize -= size;
+    }
+
+    private void trimToSize(int maxSize){
+        while(mSize > maxSize && !mBuckets.isEmpty()){
+            Map.Entry<Integer, LinkedList<Bitmap>> largest = mBuckets.lastEntry();
+            Bitmap bitmap = largest.getValue().removeFirst();
+            if(largest.getValue().isEmpty()){
+                mBuckets.remove(largest.getKey());
+            }
+            mSize -= largest.getKey();
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Returns the number of bytes backing the bitmap
+     */
+    static int allocationSize(Bitmap bitmap){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config){
+        if(config == Bitmap.Config.ALPHA_8){
+            return 1;
+        } else if(config == Bitmap.Config.RGB_565){
+            return 2;
+        }
+        return 4;
+    }
+}
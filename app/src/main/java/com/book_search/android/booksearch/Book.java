@@ -1,57 +1,109 @@
 package com.book_search.android.booksearch;
 
-import android.graphics.Bitmap;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * A Book object contains information related to a single book
+ * A Book object contains information related to a single book.
+ *
+ * Books are immutable. Everything a list row shows, such as the joined authors, the
+ * display year, the rating text and the rating color bucket, is worked out once when
+ * the book is created, so binding a row does no parsing or allocation.
  */
 
-public class Book {
+public final class Book implements Parcelable {
+
+    //Rating text shown for a book without a rating
+    public static final String NO_RATING_TEXT = "N/A";
+
+    //Number of rating color buckets, see getRatingBucket()
+    public static final int RATING_BUCKET_COUNT = 4;
+
+    //Largest view, in pixels, the small thumbnail is used for. Small thumbnails are
+    //about 80 pixels wide, so they are stretched by at most a fifth.
+    static final int SMALL_THUMBNAIL_MAX_SIZE = 96;
 
     // Thumbnail url for the book
-    private Bitmap mThumbnailURL;
+    private final String mThumbnailURL;
+
+    // Url of a smaller variant of the thumbnail, or null
+    private final String mSmallThumbnailURL;
 
     // Title of the book
-    private String mTitle;
+    private final String mTitle;
+
+    // Authors of the book
+    private final List<String> mAuthors;
+
+    // Authors of the book joined with new lines, for display
+    private final String mAuthorText;
+
+    // Date the book was published, as sent by the server
+    private final String mPublishedDate;
+
+    // Year the book was published, for display
+    private final String mPublishedYear;
 
-    // Author of the book
-    private String mAuthor;
+    // Rating of the book, or NaN if it has none
+    private final float mRating;
 
-    // Year the book was published
-    private String mPublished;
+    // Rating of the book, for display
+    private final String mRatingText;
 
-    // Rating of the book
-    private String mRating;
+    // Color bucket of the rating
+    private final int mRatingBucket;
 
     // Website URL for the book
-    private String mWebsiteURL;
+    private final String mWebsiteURL;
 
     /**
      * Constructs a new Book object
      *
-     * @param published is the year the book was published
      * @param title is the title of the book
-     * @param author is the name of the author of the book
+     * @param authors are the names of the authors of the book
+     * @param publishedDate is the date the book was published, such as "2004" or "2004-05-01"
      * @param thumbnailURL is the URL of the book's thumbanil
-     * @param rating is the rating for the book
+     * @param smallThumbnailURL is the URL of a smaller variant of the thumbnail, or null
+     * @param rating is the rating for the book, or NaN if it has none
      * @param websiteURL is the URL for the book's website
      */
-    public Book(String title, String author, String published, Bitmap thumbnailURL,
-                String rating, String websiteURL){
-        mTitle =title;
-        mAuthor = author;
+    public Book(String title, List<String> authors, String publishedDate, String thumbnailURL,
+                String smallThumbnailURL, float rating, String websiteURL){
+        mTitle = title;
+        mAuthors = authors == null || authors.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(authors));
+        mPublishedDate = publishedDate;
         mThumbnailURL = thumbnailURL;
+        mSmallThumbnailURL = smallThumbnailURL;
         mRating = rating;
-        mWebsiteURL =websiteURL;
-        mPublished =published;
+        mWebsiteURL = websiteURL;
+
+        mAuthorText = joinAuthors(mAuthors);
+        mPublishedYear = formatYear(publishedDate);
+        mRatingText = formatRating(rating);
+        mRatingBucket = ratingBucket(rating);
     }
 
     /**
-     * Return the year the book was published
+     * Return the year the book was published, or the published date if it does not
+     * start with a year
      */
     public String getPublishedYear(){
-        return mPublished;
+        return mPublishedYear;
     }
+
+    /**
+     * Returns the date the book was published, as sent by the server
+     */
+    public String getPublishedDate(){
+        return mPublishedDate;
+    }
+
     /**
      * Returns the title of the book
      */
@@ -60,26 +112,74 @@ public class Book {
     }
 
     /**
-     * Returns the author of the book
+     * Returns the authors of the book joined with new lines
      */
     public String getAuthor(){
-        return mAuthor;
+        return mAuthorText;
+    }
+
+    /**
+     * Returns the authors of the book
+     */
+    public List<String> getAuthors(){
+        return mAuthors;
     }
 
     /**
      * Returns the thumbnail URL for the book
      */
-    public Bitmap getThumbnailURL(){
+    public String getThumbnailURL(){
         return mThumbnailURL;
     }
-    
+
+    /**
+     * Returns the URL of a smaller variant of the thumbnail, or null if there is none
+     */
+    public String getSmallThumbnailURL(){
+        return mSmallThumbnailURL;
+    }
+
+    /**
+     * Returns the thumbnail URL for a view of the given size in pixels: the small
+     * variant when it is big enough for the view, so less is downloaded on low
+     * density screens, and the regular thumbnail otherwise
+     */
+    public String getThumbnailURL(int targetSize){
+        if(mSmallThumbnailURL != null && targetSize <= SMALL_THUMBNAIL_MAX_SIZE){
+            return mSmallThumbnailURL;
+        }
+        return mThumbnailURL != null ? mThumbnailURL : mSmallThumbnailURL;
+    }
+
     /**
-     * Returns the rating for the book
+     * Returns the rating for the book, or NaN if it has none
      */
-    public String getRating(){
+    public float getRating(){
         return mRating;
     }
 
+    /**
+     * Returns whether the book has a rating
+     */
+    public boolean hasRating(){
+        return !Float.isNaN(mRating);
+    }
+
+    /**
+     * Returns the rating for display, or "N/A" if the book has none
+     */
+    public String getRatingText(){
+        return mRatingText;
+    }
+
+    /**
+     * Returns the color bucket of the rating, from 0 for no or low ratings to
+     * RATING_BUCKET_COUNT - 1 for the highest ones
+     */
+    public int getRatingBucket(){
+        return mRatingBucket;
+    }
+
     /**
      * Returns the website URL for the book
      */
@@ -87,5 +187,143 @@ public class Book {
         return mWebsiteURL;
     }
 
+    /**
+     * Returns the key used to recognize the same book from different sources
+     */
+    public String getKey(){
+        if(mWebsiteURL != null){
+            return mWebsiteURL;
+        }
+        return mTitle + "\n" + mAuthorText;
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof Book)){
+            return false;
+        }
+        Book book = (Book) other;
+        return equal(mTitle, book.mTitle) && mAuthors.equals(book.mAuthors)
+                && equal(mPublishedDate, book.mPublishedDate)
+                && equal(mThumbnailURL, book.mThumbnailURL)
+                && equal(mSmallThumbnailURL, book.mSmallThumbnailURL)
+                && Float.floatToIntBits(mRating) == Float.floatToIntBits(book.mRating)
+                && equal(mWebsiteURL, book.mWebsiteURL);
+    }
+
+    @Override
+    public int hashCode(){
+        return getKey().hashCode();
+    }
+
+    private static boolean equal(String first, String second){
+        return first == null ? second == null : first.equals(second);
+    }
+
+    @Override
+    public int describeContents(){
+        return 0;
+    }
+
+    /**
+     * Only the source fields are written; the display fields are derived again
+     * when the book is read back
+     */
+    @Override
+    public void writeToParcel(Parcel dest, int flags){
+        dest.writeString(mTitle);
+        dest.writeStringList(mAuthors);
+        dest.writeString(mPublishedDate);
+        dest.writeString(mThumbnailURL);
+        dest.writeString(mSmallThumbnailURL);
+        dest.writeFloat(mRating);
+        dest.writeString(mWebsiteURL);
+    }
+
+    public static final Parcelable.Creator<Book> CREATOR = new Parcelable.Creator<Book>() {
+        @Override
+        public Book createFromParcel(Parcel source){
+            String title = source.readString();
+            List<String> authors = new ArrayList<>();
+            source.readStringList(authors);
+            return new Book(title, authors, source.readString(), source.readString(),
+                    source.readString(), source.readFloat(), source.readString());
+        }
+
+        @Override
+        public Book[] newArray(int size){
+            return new Book[size];
+        }
+    };
+
+    /**
+     * Joins the authors with new lines, or returns a blank if there are none
+     */
+    private static String joinAuthors(List<String> authors){
+        if(authors.isEmpty()){
+            return " ";
+        }
+        if(authors.size() == 1){
+            return authors.get(0);
+        }
+        StringBuilder text = new StringBuilder();
+        for(String author : authors){
+            if(text.length() > 0){
+                text.append('\n');
+            }
+            text.append(author);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the year a date such as "2004-05-01" starts with, or the date itself
+     * if it does not start with four digits
+     */
+    static String formatYear(String publishedDate){
+        if(publishedDate == null){
+            return "";
+        }
+        if(publishedDate.length() < 4){
+            return publishedDate;
+        }
+        for(int i = 0; i < 4; i++){
+            if(!Character.isDigit(publishedDate.charAt(i))){
+                return publishedDate;
+            }
+        }
+        return publishedDate.substring(0, 4);
+    }
+
+    /**
+     * Formats the rating without a trailing ".0", or returns "N/A" for NaN
+     */
+    static String formatRating(float rating){
+        if(Float.isNaN(rating)){
+            return NO_RATING_TEXT;
+        }
+        if(rating == (int) rating){
+            return String.valueOf((int) rating);
+        }
+        return String.valueOf(rating);
+    }
 
+    /**
+     * Returns the color bucket for the rating: below 2 (or none), 2, 3, and 4 or more
+     */
+    static int ratingBucket(float rating){
+        if(Float.isNaN(rating) || rating < 2){
+            return 0;
+        }
+        if(rating < 3){
+            return 1;
+        }
+        if(rating < 4){
+            return 2;
+        }
+        return 3;
+    }
 }
@@ -2,143 +2,374 @@ package com.book_search.android.booksearch;
 
 import android.content.Context;
 import android.graphics.drawable.GradientDrawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.content.ContextCompat;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.book_search.core.PriorityExecutor.Priority;
+import com.book_search.core.ResultStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * A BookAdapter knows how to create a list item layout for each book in te
  * data source (a list of Book objects).
  *
- * These list item layouts will be provided to an adapter view like ListView
- * to be displayed to the user
+ * These list item layouts will be provided to a RecyclerView to be displayed
+ * to the user. When the list of books is replaced, the difference with the old
+ * list is computed on a background thread, so only the rows that changed are
+ * rebound.
+ *
+ * Every book set is kept in a {@link ResultStore}, which sorts, filters and re-ranks
+ * them on the same background thread. Changing the order or the filter only
+ * rearranges the books already loaded, without searching again.
  */
 
-public class BookAdapter extends ArrayAdapter<Book>{
+public class BookAdapter extends RecyclerView.Adapter<BookAdapter.BookViewHolder>{
+
+    /**
+     * Listener for clicks on a book in the list
+     */
+    public interface OnBookClickListener {
+        void onBookClick(Book book);
+    }
+
+    //Thread the books are sorted and filtered, and the differences between lists
+    //computed, on
+    private static final ExecutorService sDiffExecutor = Executors.newSingleThreadExecutor();
+
+    //Reads the fields of a book the store sorts and filters by
+    private static final ResultStore.Fields<Book> BOOK_FIELDS = new ResultStore.Fields<Book>() {
+        @Override
+        public String getKey(Book book) {
+            return book.getKey();
+        }
+
+        @Override
+        public String getTitle(Book book) {
+            return book.getTitle();
+        }
+
+        @Override
+        public float getRating(Book book) {
+            return book.getRating();
+        }
+
+        @Override
+        public String getPublishedDate(Book book) {
+            return book.getPublishedDate();
+        }
+    };
+
+    //Handler used to apply computed differences on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //Books currently shown
+    private List<Book> mBooks = Collections.emptyList();
+
+    //Number of books set, including the ones the filter hides
+    private int mTotalCount;
+
+    //Every book set, in the chosen order. Only used on sDiffExecutor.
+    private final ResultStore<Book> mStore = new ResultStore<>(BOOK_FIELDS);
+
+    //Incremented for every new list, so an outdated difference is never applied
+    private int mGeneration;
+
+    //Context of the app
+    private final Context mContext;
+
+    //Loads the thumbnails for the rows that are bound
+    private final ThumbnailLoader mThumbnailLoader;
+
+    //Listener for clicks on the rows
+    private final OnBookClickListener mClickListener;
+
+    //Color of each rating bucket, resolved once instead of on every bind
+    private final int[] mRatingColors;
 
     /**
      * Constructs a new BookAdapter
      * @param context of the app
-     * @param books is the list of books, which is the data source of the adapter
+     * @param clickListener is notified when a book is clicked
      */
-    public BookAdapter(Context context, List<Book> books) {
-        super(context, 0, books);
+    public BookAdapter(Context context, OnBookClickListener clickListener) {
+        mContext = context;
+        mClickListener = clickListener;
+        mThumbnailLoader = new ThumbnailLoader(context);
+
+        mRatingColors = new int[Book.RATING_BUCKET_COUNT];
+        mRatingColors[0] = ContextCompat.getColor(context, R.color.rating1);
+        mRatingColors[1] = ContextCompat.getColor(context, R.color.rating2);
+        mRatingColors[2] = ContextCompat.getColor(context, R.color.rating3);
+        mRatingColors[3] = ContextCompat.getColor(context, R.color.rating4);
     }
 
     /**
-     * Returns a list item view that displays information about the book
-     * in the list of books
+     * Caches the views of a list item, so they are only looked up once
      */
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        //Check if there is an existing list item view (called converView) that
-        //we can reuse, otherwise, if converView is null, then inflate a new list item layout
-        View listItemView = convertView;
-        if(listItemView == null){
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.book_list_item, parent, false);
+    class BookViewHolder extends RecyclerView.ViewHolder {
+        final ImageView thumbNailView;
+        final TextView titleView;
+        final TextView authorView;
+        final TextView publishedView;
+        final TextView ratingView;
+        final GradientDrawable ratingCircle;
+
+        BookViewHolder(View listItemView){
+            super(listItemView);
+            thumbNailView = (ImageView) listItemView.findViewById(R.id.thumbnail_view);
+            titleView = (TextView) listItemView.findViewById(R.id.title_view);
+            authorView = (TextView) listItemView.findViewById(R.id.author_view);
+            publishedView = (TextView) listItemView.findViewById(R.id.publish_view);
+            ratingView = (TextView) listItemView.findViewById(R.id.rating_view);
+            //Mutate the background so each row can have its own color
+            ratingCircle = (GradientDrawable) ratingView.getBackground().mutate();
+
+            listItemView.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View view) {
+                    int position = getAdapterPosition();
+                    if(position != RecyclerView.NO_POSITION && mClickListener != null){
+                        mClickListener.onBookClick(mBooks.get(position));
+                    }
+                }
+            });
         }
+    }
+
+    @Override
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(mContext).inflate(
+                R.layout.book_list_item, parent, false);
+        return new BookViewHolder(listItemView);
+    }
 
+    /**
+     * Displays information about the book at the given position in the list of books
+     */
+    @Override
+    public void onBindViewHolder(BookViewHolder holder, int position) {
         //Find the book at the given position in the list of books
-        Book currentBook = getItem(position);
-
-        //Find the ImageView with view ID thumbnail_view
-        ImageView thumbNailView = (ImageView) listItemView.findViewById((R.id.thumbnail_view));
-        //Display the thumbnail for the current book
-        thumbNailView.setImageBitmap(currentBook.getThumbnailURL());
-
-        //Find the TextView with the view ID title_view
-        TextView titleView = (TextView) listItemView.findViewById((R.id.title_view));
-        //Display the title for the book
-        titleView.setText(currentBook.getTitle());
-
-        //Find the TextView with the view ID author_view
-        TextView authorView = (TextView) listItemView.findViewById((R.id.author_view));
-        //Display the author of the book
-        authorView.setText(currentBook.getAuthor());
-
-        //Find the TextView with the view ID published_view
-        TextView publishedView = (TextView) listItemView.findViewById((R.id.publish_view));
-        //Display the published date of the book
-        publishedView.setText(currentBook.getPublishedYear());
-
-        //Find the TextView with the view ID rating_view
-        TextView ratingView = (TextView) listItemView.findViewById((R.id.rating_view));
-
-        //TODO fix the formatter
-        //Check if there is a rating for the current book
-        if(!currentBook.getRating().equals("N/A")) {
-            //Convert String to a double and set the corresponding color
-            double formattedRating = formatRating(currentBook.getRating());
-
-            //Set the proper background color on the rating circle.
-            //Fetch the background from the TextView, which is ratingView
-            GradientDrawable ratingCircle = (GradientDrawable) ratingView.getBackground();
-            //Get the appropriate background color based on the current book rating
-            int magnitudeColor = getRatingColor(formattedRating);
-            ratingCircle.setColor(magnitudeColor);
-
-            //Display rating for the book
-            ratingView.setText(currentBook.getRating());
-        } else{
-            //Otherwise, Display the "N/A" rating for the book
-            ratingView.setText(currentBook.getRating());
-            //Set the proper background color on the rating circle.
-            //Fetch the background from the TextView, which is ratingView
-            GradientDrawable ratingCircle = (GradientDrawable) ratingView.getBackground();
-            //Get the appropriate background color based on the current book rating
-            int magnitudeColor = ContextCompat.getColor(getContext(), R.color.rating1);
-            ratingCircle.setColor(magnitudeColor);
+        Book currentBook = mBooks.get(position);
 
-        }
+        //Load the thumbnail for the current book in the background. This also cancels
+        //the request for the book this recycled view was previously showing. Rows are
+        //bound before they are attached, and ahead of time while scrolling, so a row
+        //only becomes visible work once it is attached.
+        Priority priority = holder.itemView.getWindowToken() != null
+                ? Priority.VISIBLE : Priority.OFFSCREEN;
+        mThumbnailLoader.load(currentBook.getThumbnailURL(mThumbnailLoader.getTargetSize()),
+                holder.thumbNailView, priority);
 
+        //Display the title, author and published year for the book
+        holder.titleView.setText(currentBook.getTitle());
+        holder.authorView.setText(currentBook.getAuthor());
+        holder.publishedView.setText(currentBook.getPublishedYear());
 
-        //Return the list item view
-        return listItemView;
+        //Display rating for the book, in the color of its bucket
+        holder.ratingView.setText(currentBook.getRatingText());
+        holder.ratingCircle.setColor(mRatingColors[currentBook.getRatingBucket()]);
+    }
+
+    @Override
+    public void onViewAttachedToWindow(BookViewHolder holder) {
+        mThumbnailLoader.onAttached(holder.thumbNailView);
+    }
 
+    @Override
+    public void onViewDetachedFromWindow(BookViewHolder holder) {
+        //The row may come back without being rebound, so keep its request at a lower
+        //priority, but let go of its bitmap until then
+        mThumbnailLoader.onDetached(holder.thumbNailView);
+    }
+
+    @Override
+    public void onViewRecycled(BookViewHolder holder) {
+        //The row left the screen, so its thumbnail is no longer needed
+        mThumbnailLoader.release(holder.thumbNailView);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mBooks.size();
     }
 
     /**
-     * Converts the String rating for the book into a double
+     * Returns the book at the given position
      */
-    private double formatRating(String rating){
-        double ratingDouble = Double.parseDouble(rating);
-        return ratingDouble;
+    public Book getItem(int position){
+        return mBooks.get(position);
+    }
+
+    /**
+     * Replaces the books in the list. The books are merged into the chosen order and
+     * the difference with the current list is computed on a background thread, and
+     * then applied, so only the changed rows are rebound. Must be called on the main
+     * thread.
+     */
+    public void setBooks(List<Book> books){
+        final List<Book> allBooks = books == null
+                ? Collections.<Book>emptyList() : new ArrayList<>(books);
+        update(new Change() {
+            @Override
+            public List<Book> apply() {
+                return mStore.setItems(allBooks);
+            }
+        }, true);
+    }
+
+    /**
+     * Sets the query the books are re-ranked by in relevance order. Must be called on
+     * the main thread.
+     */
+    public void setQuery(final String query){
+        update(new Change() {
+            @Override
+            public List<Book> apply() {
+                return mStore.setQuery(query);
+            }
+        }, false);
+    }
+
+    /**
+     * Sets the order the books are shown in. Must be called on the main thread.
+     */
+    public void setOrder(final ResultStore.Order order){
+        update(new Change() {
+            @Override
+            public List<Book> apply() {
+                return mStore.setOrder(order);
+            }
+        }, false);
+    }
+
+    /**
+     * Sets which books are shown. Must be called on the main thread.
+     */
+    public void setFilter(final ResultStore.Filter filter){
+        update(new Change() {
+            @Override
+            public List<Book> apply() {
+                return mStore.setFilter(filter);
+            }
+        }, false);
+    }
+
+    /**
+     * Returns the number of books set, including the ones the filter hides
+     */
+    public int getTotalCount(){
+        return mTotalCount;
+    }
+
+    /**
+     * Applies the change to the store on the background thread and shows the books it
+     * leaves
+     * @param diff is whether to work out which rows changed. A new order moves most
+     *             rows, which DiffUtil is slowest at, so the whole list is rebound instead.
+     */
+    private void update(final Change change, final boolean diff){
+        final List<Book> oldBooks = mBooks;
+        final int generation = ++mGeneration;
+
+        sDiffExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Book> newBooks = change.apply();
+                final int totalCount = mStore.size();
+                //Nothing to compare against, so skip the difference
+                final DiffUtil.DiffResult result =
+                        diff && !oldBooks.isEmpty() && !newBooks.isEmpty()
+                        ? DiffUtil.calculateDiff(new BookDiffCallback(oldBooks, newBooks))
+                        : null;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        //A newer list has been set in the meantime
+                        if(generation != mGeneration){
+                            return;
+                        }
+                        mBooks = newBooks;
+                        mTotalCount = totalCount;
+                        if(result != null){
+                            result.dispatchUpdatesTo(BookAdapter.this);
+                        } else {
+                            notifyDataSetChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Removes every book from the list
+     */
+    public void clear(){
+        setBooks(null);
+    }
 
+    /**
+     * Stops loading every thumbnail and releases the ones shown, such as when the
+     * screen showing the list is destroyed
+     */
+    public void cancelThumbnails(){
+        mThumbnailLoader.cancelAll();
     }
 
     /**
-     * Returns the color corresponding to the decimal magnitude value
+     * A change to the store, applied on the background thread
      */
-    private int getRatingColor(double rating){
-        int ratingColorResourceId;
-        int magnitudeFloor = (int) Math.floor(rating);
-        switch(magnitudeFloor){
-            case 0:
-            case 1:
-                ratingColorResourceId = R.color.rating1;
-                break;
-            case 2:
-                ratingColorResourceId = R.color.rating2;
-                break;
-            case 3:
-                ratingColorResourceId = R.color.rating3;
-                break;
-            case 4:
-            case 5:
-                ratingColorResourceId = R.color.rating4;
-                break;
-            default:
-                ratingColorResourceId = R.color.rating1;
-                break;
+    private interface Change {
+        /**
+         * Returns the books shown after the change
+         */
+        List<Book> apply();
+    }
+
+    /**
+     * Compares two lists of books for DiffUtil
+     */
+    private static class BookDiffCallback extends DiffUtil.Callback {
+        private final List<Book> mOldBooks;
+        private final List<Book> mNewBooks;
+
+        BookDiffCallback(List<Book> oldBooks, List<Book> newBooks){
+            mOldBooks = oldBooks;
+            mNewBooks = newBooks;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldBooks.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewBooks.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldBooks.get(oldItemPosition).getKey()
+                    .equals(mNewBooks.get(newItemPosition).getKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldBooks.get(oldItemPosition).equals(mNewBooks.get(newItemPosition));
         }
-        return ContextCompat.getColor(getContext(), ratingColorResourceId);
     }
 }
-
@@ -0,0 +1,103 @@
+package com.book_search.android.booksearch;
+
+import android.os.Process;
+
+import com.book_search.core.CancellationToken;
+import com.book_search.core.PriorityExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The thread pools background work runs on, each bounded and each running work for
+ * what is on screen before off-screen and prefetch work.
+ *
+ * Work is split by what it waits for, so one kind can't hold up another: searches wait
+ * on the network, thumbnail downloads on the network or the disk cache, and thumbnail
+ * decodes on the CPU. A decode can run while the next thumbnail downloads.
+ */
+
+final class BookExecutors {
+
+    //Most searches that run at the same time
+    private static final int API_THREADS = 4;
+
+    //Most thumbnails read or downloaded at the same time
+    private static final int IMAGE_THREADS = 4;
+
+    //Most thumbnails decoded at the same time. One core is left for the main thread.
+    private static final int DECODE_THREADS =
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 3));
+
+    //Runs the pools' threads at background priority, below the main thread
+    private static final ThreadFactory BACKGROUND_THREADS = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            });
+        }
+    };
+
+    private static final PriorityExecutor sApi =
+            new PriorityExecutor("api", API_THREADS, BACKGROUND_THREADS);
+
+    private static final PriorityExecutor sImage =
+            new PriorityExecutor("image", IMAGE_THREADS, BACKGROUND_THREADS);
+
+    private static final PriorityExecutor sDecode =
+            new PriorityExecutor("decode", DECODE_THREADS, BACKGROUND_THREADS);
+
+    //Cancels tokens, whose listeners disconnect sockets, away from the main thread
+    private static final Executor sCanceller =
+            Executors.newSingleThreadExecutor(BACKGROUND_THREADS);
+
+    private BookExecutors(){
+    }
+
+    /**
+     * Returns the pool searches run on
+     */
+    static PriorityExecutor api(){
+        return sApi;
+    }
+
+    /**
+     * Returns the pool thumbnails are read from the disk cache or downloaded on
+     */
+    static PriorityExecutor image(){
+        return sImage;
+    }
+
+    /**
+     * Returns the pool thumbnails are decoded on
+     */
+    static PriorityExecutor decode(){
+        return sDecode;
+    }
+
+    /**
+     * Cancels the token on a background thread. Cancelling aborts the connections of
+     * the work it stops, which can block, so it is never done on the main thread.
+     */
+    static void cancel(final CancellationToken token){
+        sCanceller.execute(new Runnable() {
+            @Override
+            public void run() {
+                token.cancel();
+            }
+        });
+    }
+
+    /**
+     * Returns the statistics of every pool, for dumpsys
+     */
+    static String summary(){
+        return sApi + "\n" + sImage + "\n" + sDecode;
+    }
+}
@@ -0,0 +1,250 @@
+package com.book_search.android.booksearch;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Local full-text index of every book the app has downloaded, so searches can be
+ * answered immediately, and without a connection, from books seen before.
+ *
+ * Book details live in a regular table keyed by the book's info link. The title,
+ * authors and published date are also indexed in an FTS3 table that shares the
+ * record's row id. When the index grows over its size cap, the records that were
+ * updated longest ago are evicted.
+ */
+
+public class BookIndex extends SQLiteOpenHelper {
+    //Tag for log messages
+    private static final String LOG_TAG = BookIndex.class.getSimpleName();
+
+    //Name and version of the database file
+    private static final String DATABASE_NAME = "book_index.db";
+    private static final int DATABASE_VERSION = 3;
+
+    //Default maximum number of books kept in the index
+    private static final int DEFAULT_MAX_RECORDS = 2000;
+
+    //Table holding the book details
+    private static final String TABLE_RECORDS = "book_records";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_AUTHORS = "authors";
+    private static final String COLUMN_PUBLISHED = "published";
+    private static final String COLUMN_RATING = "rating";
+    private static final String COLUMN_INFO_LINK = "info_link";
+    private static final String COLUMN_THUMBNAIL = "thumbnail";
+    private static final String COLUMN_SMALL_THUMBNAIL = "small_thumbnail";
+    private static final String COLUMN_UPDATED = "updated";
+
+    //Full-text table; its docid is the _id of the record it indexes
+    private static final String TABLE_FTS = "book_fts";
+
+    //Single index instance shared by the whole app
+    private static BookIndex sInstance;
+
+    //Maximum number of books kept in the index
+    private volatile int mMaxRecords = DEFAULT_MAX_RECORDS;
+
+    /**
+     * Returns the index shared by the whole app
+     */
+    public static synchronized BookIndex getInstance(Context context){
+        if(sInstance == null){
+            sInstance = new BookIndex(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private BookIndex(Context context){
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_RECORDS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_INFO_LINK + " TEXT NOT NULL UNIQUE, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_AUTHORS + " TEXT, "
+                + COLUMN_PUBLISHED + " TEXT, "
+                + COLUMN_RATING + " REAL, "
+                + COLUMN_THUMBNAIL + " TEXT, "
+                + COLUMN_SMALL_THUMBNAIL + " TEXT, "
+                + COLUMN_UPDATED + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + TABLE_RECORDS + "_" + COLUMN_UPDATED + " ON "
+                + TABLE_RECORDS + " (" + COLUMN_UPDATED + ")");
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_FTS + " USING fts3("
+                + COLUMN_TITLE + ", " + COLUMN_AUTHORS + ", " + COLUMN_PUBLISHED + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        //The index only holds copies of downloaded data, so it is simply rebuilt
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_FTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RECORDS);
+        onCreate(db);
+    }
+
+    /**
+     * Sets the maximum number of books kept in the index. The oldest records are
+     * evicted the next time books are added.
+     */
+    public void setMaxRecords(int maxRecords){
+        mMaxRecords = maxRecords;
+    }
+
+    /**
+     * Adds the books to the index, replacing older copies of the same books.
+     * This is a blocking call and must not be made on the main thread.
+     */
+    public void insertBooks(List<Book> books){
+        if(books == null || books.isEmpty()){
+            return;
+        }
+        SQLiteDatabase db;
+        try {
+            db = getWritableDatabase();
+        } catch (RuntimeException e){
+            Log.e(LOG_TAG, "Unable to open the book index.", e);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for(Book book : books){
+                if(book.getWebsiteURL() == null){
+                    continue;
+                }
+                deleteRecord(db, book.getWebsiteURL());
+
+                ContentValues record = new ContentValues();
+                record.put(COLUMN_INFO_LINK, book.getWebsiteURL());
+                record.put(COLUMN_TITLE, book.getTitle());
+                record.put(COLUMN_AUTHORS, book.getAuthor());
+                record.put(COLUMN_PUBLISHED, book.getPublishedDate());
+                if(book.hasRating()){
+                    record.put(COLUMN_RATING, book.getRating());
+                } else {
+                    record.putNull(COLUMN_RATING);
+                }
+                record.put(COLUMN_THUMBNAIL, book.getThumbnailURL());
+                record.put(COLUMN_SMALL_THUMBNAIL, book.getSmallThumbnailURL());
+                //Books later in the list count as newer, so they are evicted last
+                record.put(COLUMN_UPDATED, now++);
+                long id = db.insert(TABLE_RECORDS, null, record);
+                if(id == -1){
+                    continue;
+                }
+
+                ContentValues text = new ContentValues();
+                text.put("docid", id);
+                text.put(COLUMN_TITLE, book.getTitle());
+                text.put(COLUMN_AUTHORS, book.getAuthor());
+                text.put(COLUMN_PUBLISHED, book.getPublishedDate());
+                db.insert(TABLE_FTS, null, text);
+            }
+            evictOldest(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns up to limit books matching every word of the query, most recently
+     * updated first. This is a blocking call and must not be made on the main thread.
+     */
+    public List<Book> search(String query, int limit){
+        List<Book> books = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if(match == null){
+            return books;
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().rawQuery("SELECT r." + COLUMN_TITLE
+                    + ", r." + COLUMN_AUTHORS + ", r." + COLUMN_PUBLISHED
+                    + ", r." + COLUMN_THUMBNAIL + ", r." + COLUMN_RATING
+                    + ", r." + COLUMN_INFO_LINK + ", r." + COLUMN_SMALL_THUMBNAIL
+                    + " FROM " + TABLE_RECORDS + " r JOIN " + TABLE_FTS + " f ON f.docid = r."
+                    + COLUMN_ID + " WHERE " + TABLE_FTS + " MATCH ? ORDER BY r." + COLUMN_UPDATED
+                    + " DESC LIMIT " + limit, new String[]{match});
+            while(cursor.moveToNext()){
+                float rating = cursor.isNull(4) ? Float.NaN : cursor.getFloat(4);
+                books.add(new Book(cursor.getString(0), splitAuthors(cursor.getString(1)),
+                        cursor.getString(2), cursor.getString(3), cursor.getString(6), rating,
+                        cursor.getString(5)));
+            }
+        } catch (RuntimeException e){
+            Log.e(LOG_TAG, "Problem searching the book index.", e);
+        } finally {
+            if(cursor != null){
+                cursor.close();
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Splits authors stored joined with new lines back into a list
+     */
+    private static List<String> splitAuthors(String authors){
+        List<String> list = new ArrayList<>();
+        if(authors != null){
+            for(String author : authors.split("\n")){
+                if(!author.trim().isEmpty()){
+                    list.add(author);
+                }
+            }
+        }
+        return list;
+    }
+
+    private static void deleteRecord(SQLiteDatabase db, String infoLink){
+        String[] args = new String[]{infoLink};
+        db.delete(TABLE_FTS, "docid IN (SELECT " + COLUMN_ID + " FROM " + TABLE_RECORDS
+                + " WHERE " + COLUMN_INFO_LINK + " = ?)", args);
+        db.delete(TABLE_RECORDS, COLUMN_INFO_LINK + " = ?", args);
+    }
+
+    /**
+     * Deletes the records updated longest ago until the index fits its size cap
+     */
+    private void evictOldest(SQLiteDatabase db){
+        String oldest = "SELECT " + COLUMN_ID + " FROM " + TABLE_RECORDS + " ORDER BY "
+                + COLUMN_UPDATED + " DESC LIMIT -1 OFFSET " + mMaxRecords;
+        db.execSQL("DELETE FROM " + TABLE_FTS + " WHERE docid IN (" + oldest + ")");
+        db.execSQL("DELETE FROM " + TABLE_RECORDS + " WHERE " + COLUMN_ID + " IN (" + oldest + ")");
+    }
+
+    /**
+     * Turns the user's query into an FTS MATCH expression that requires every word,
+     * each treated as a prefix, or null if the query has no words
+     */
+    static String toMatchExpression(String query){
+        if(query == null){
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for(String word : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")){
+            if(word.isEmpty()){
+                continue;
+            }
+            if(match.length() > 0){
+                match.append(' ');
+            }
+            match.append(word).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+}
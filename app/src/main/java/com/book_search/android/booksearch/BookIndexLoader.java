@@ -0,0 +1,57 @@
+package com.book_search.android.booksearch;
+
+import android.content.AsyncTaskLoader;
+import android.content.Context;
+
+import java.util.List;
+
+/**
+ * Loads the books in the local {@link BookIndex} that match a query
+ */
+
+public class BookIndexLoader extends AsyncTaskLoader<List<Book>> {
+
+    //Query to search the index for
+    private final String mQuery;
+
+    //Maximum number of books to load
+    private final int mLimit;
+
+    //Books loaded from the index
+    private List<Book> mBooks;
+
+    /**
+     * Construct a new BookIndexLoader
+     * @param context of the activity
+     * @param query is the text the user searched for
+     * @param limit is the maximum number of books to load
+     */
+    public BookIndexLoader(Context context, String query, int limit){
+        super(context);
+        mQuery = query;
+        mLimit = limit;
+    }
+
+    @Override
+    protected void onStartLoading(){
+        if(mBooks != null){
+            deliverResult(mBooks);
+        } else {
+            forceLoad();
+        }
+    }
+
+    /**
+     * This is on a background thread.
+     */
+    @Override
+    public List<Book> loadInBackground() {
+        return BookIndex.getInstance(getContext()).search(mQuery, mLimit);
+    }
+
+    @Override
+    public void deliverResult(List<Book> books){
+        mBooks = books;
+        super.deliverResult(books);
+    }
+}
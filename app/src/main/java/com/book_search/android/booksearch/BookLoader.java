@@ -1,49 +1,293 @@
 package com.book_search.android.booksearch;
 
-import android.content.AsyncTaskLoader;
 import android.content.Context;
+import android.content.Loader;
+import android.os.Handler;
+import android.os.Looper;
 
+import com.book_search.core.CancellationToken;
+import com.book_search.core.PriorityExecutor.Priority;
+
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Loads a list of books by using an AsynkTask to perform the network
- * request to the given URL
+ * Loads a list of books by searching every catalog for the given query.
+ *
+ * The search runs on the API pool with visible priority, and no thread waits for it:
+ * the loader is called back when the page is ready.
+ *
+ * Results are loaded one page at a time using the catalogs' paging parameters.
+ * Every page is appended to the books loaded so far, and the whole list is
+ * delivered each time, so the loader survives configuration changes with every
+ * page intact.
+ *
+ * While a page is downloading, the books parsed so far are delivered in small
+ * batches, so the first rows show before the whole response has arrived.
+ *
+ * A page that is abandoned, because the loader was cancelled, abandoned or reset, or
+ * because a newer page was started, stops its search and aborts its connections,
+ * unless another caller is waiting for the same search.
  */
 
-public class BookLoader extends AsyncTaskLoader<List<Book>> {
+public class BookLoader extends Loader<List<Book>> {
     //Tag for log messages
     private static final String LOG_TAG = BookLoader.class.getName();
 
-    //Query URL
-    private String mUrl;
+    //Text to search for
+    private final String mQuery;
+
+    //Number of results requested for the first page
+    private final int mFirstPageSize;
+
+    //Number of results requested for every later page
+    private final int mPageSize;
+
+    //Books loaded so far, or null before the first page has been delivered
+    private volatile List<Book> mBooks;
+
+    //Position of the next page in each catalog. Merged pages drop duplicates, so
+    //this is not the number of books loaded.
+    private int mNextIndex;
+
+    //Whether there may be more results: cleared by an empty page or a complete one,
+    //but not by a failed page, which the next scroll retries
+    private boolean mHasMore = true;
+
+    //Whether every catalog has run out of results, so the books loaded are all of them
+    private boolean mComplete;
+
+    //Whether a page is being loaded right now
+    private boolean mLoading;
+
+    //Page being loaded, or null
+    private PageLoad mPage;
+
+    //Handler used to deliver partial pages on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
 
     /**
      * Construct a new BookLoader
-     * @param url to load data from
      * @param context of the activity
+     * @param query is the text to search for
+     * @param firstPageSize is the number of results requested for the first page
+     * @param pageSize is the number of results requested for every later page
      */
-    public BookLoader(Context context, String url){
+    public BookLoader(Context context, String query, int firstPageSize, int pageSize){
         super(context);
-        mUrl = url;
+        mQuery = query;
+        mFirstPageSize = firstPageSize;
+        mPageSize = pageSize;
     }
 
     @Override
     protected void onStartLoading(){
-        forceLoad();
+        //Redeliver the pages that are already loaded instead of starting over
+        if(mBooks != null){
+            deliverResult(mBooks);
+        } else {
+            forceLoad();
+        }
     }
 
     /**
-     * This is on a background thread.
+     * Starts loading the next page, or the first one if nothing is loaded yet. A page
+     * that is still loading is abandoned.
      */
     @Override
-    public List<Book> loadInBackground() {
-        if(mUrl == null){
-            return null;
+    protected void onForceLoad(){
+        abandonPage();
+        if(mQuery == null){
+            deliverResult(null);
+            return;
+        }
+        mLoading = true;
+
+        List<Book> loaded = mBooks;
+        int startIndex = loaded == null ? 0 : mNextIndex;
+        int pageSize = loaded == null ? mFirstPageSize : mPageSize;
+
+        //Search every catalog, parse the responses, and extract a merged
+        //list of books, publishing them as they are parsed
+        mPage = new PageLoad(loaded, startIndex, pageSize);
+        QueryUtils.fetchBookDataAsync(mQuery, startIndex, pageSize, Priority.VISIBLE,
+                mPage.mToken, mPage, mPage);
+    }
+
+    /**
+     * Stops the page being loaded. The loader is cancelled right away, as nothing is
+     * left to wait for. Only called on Jelly Bean and later.
+     */
+    @Override
+    protected boolean onCancelLoad(){
+        abandonPage();
+        mLoading = false;
+        return false;
+    }
+
+    @Override
+    protected void onAbandon(){
+        abandonPage();
+    }
+
+    @Override
+    protected void onReset(){
+        abandonPage();
+        mLoading = false;
+    }
+
+    /**
+     * Stops delivering the page being loaded, if there is one, and stops its search
+     */
+    private void abandonPage(){
+        if(mPage != null){
+            mPage.mActive = false;
+            BookExecutors.cancel(mPage.mToken);
+            mPage = null;
+        }
+    }
+
+    /**
+     * Returns the text this loader searches for
+     */
+    public String getQuery(){
+        return mQuery;
+    }
+
+    /**
+     * Returns whether a page is loading, so a delivered list holds partial results
+     */
+    public boolean isLoading(){
+        return mLoading;
+    }
+
+    /**
+     * Returns whether every catalog answered the last page with fewer books than it was
+     * asked for, so the books loaded are all the catalogs have
+     */
+    public boolean isComplete(){
+        return mComplete;
+    }
+
+    /**
+     * Starts loading the next page in the background, unless a page is already
+     * loading or the last page has been reached. Must be called on the main thread.
+     */
+    public void loadNextPage(){
+        if(!mLoading && mHasMore && mBooks != null){
+            forceLoad();
         }
+    }
 
-        //Perform the network request, parse the response, and extract a
-        //list of books
-        List<Book> books = QueryUtils.fetchBookData(mUrl);
+    @Override
+    public void deliverResult(List<Book> books){
+        mLoading = false;
+        mBooks = books;
+        super.deliverResult(books);
+    }
+
+    /**
+     * Returns a new list holding both lists, in order
+     */
+    private static List<Book> concat(List<Book> first, List<Book> second){
+        List<Book> books = new ArrayList<>((first == null ? 0 : first.size()) + second.size());
+        if(first != null){
+            books.addAll(first);
+        }
+        books.addAll(second);
         return books;
     }
+
+    /**
+     * A page being loaded. It delivers the books parsed so far, appended to the pages
+     * already loaded, and then the complete page. Partial results do not change the
+     * loader's paging state; only the complete page does.
+     */
+    private class PageLoad implements QueryUtils.OnBooksParsedListener,
+            QueryUtils.OnPageLoadedListener {
+        //Pages loaded before this one
+        private final List<Book> mLoaded;
+
+        //Position of the page in each catalog
+        private final int mStartIndex;
+
+        //Number of results requested from each catalog
+        private final int mPageSize;
+
+        //When the page was requested, from System.nanoTime()
+        private final long mStart = System.nanoTime();
+
+        //Cleared once the page is complete or abandoned, so late batches are dropped
+        volatile boolean mActive = true;
+
+        //Cancelled when the page is abandoned, which stops its search
+        final CancellationToken mToken = new CancellationToken();
+
+        PageLoad(List<Book> loaded, int startIndex, int pageSize){
+            mLoaded = loaded;
+            mStartIndex = startIndex;
+            mPageSize = pageSize;
+        }
+
+        @Override
+        public void onBooksParsed(List<Book> books) {
+            if(!mActive){
+                return;
+            }
+            final List<Book> partial = concat(mLoaded, books);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(mActive && isStarted()){
+                        BookLoader.super.deliverResult(partial);
+                    }
+                }
+            });
+        }
+
+        /**
+         * This is on a background thread.
+         */
+        @Override
+        public void onPageLoaded(final List<Book> page, final boolean complete) {
+            if(!mActive){
+                return;
+            }
+            if(mLoaded == null){
+                //Shows whether warming the connections sped up the first search
+                ConnectionWarmer.recordSearch(mStart);
+            }
+            if(page != null){
+                //Keep every downloaded book in the local index for instant and offline search
+                BookIndex.getInstance(getContext()).insertBooks(page);
+            }
+
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(mPage != PageLoad.this){
+                        return;
+                    }
+                    mPage = null;
+                    mActive = false;
+
+                    //A failed page leaves the paging state alone, so the next scroll asks
+                    //for the same page again
+                    if(page == null){
+                        deliverResult(mLoaded);
+                        return;
+                    }
+                    //An empty or complete page means there is nothing more to load. A
+                    //merged page can also be short because duplicates were dropped, so
+                    //its size alone does not tell.
+                    if(page.isEmpty() || complete){
+                        mHasMore = false;
+                    }
+                    mComplete = complete;
+                    mNextIndex = mStartIndex + mPageSize;
+                    deliverResult(concat(mLoaded, page));
+                }
+            });
+        }
+    }
 }
@@ -8,21 +8,33 @@ import android.content.Loader;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import com.book_search.core.QueryNormalizer;
+import com.book_search.core.ResultStore;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *Displays book results
+ *
+ * The results can be sorted by rating, year or title and filtered to rated or recent
+ * books from the options menu. That only rearranges the books already loaded; the
+ * pages loaded later are merged into the chosen order as they arrive.
  */
 
 public class BookResults extends AppCompatActivity implements LoaderCallbacks<List<Book>>{
@@ -33,15 +45,27 @@ public class BookResults extends AppCompatActivity implements LoaderCallbacks<Li
     //TextView that is displayed when the list is empty
     private TextView mEmptyStateTextView;
 
-    //String for URL to search
-    private String searchURl;
+    //Text the user searched for
+    private String mQuery;
+
+    //Books loaded from the network so far, or null before the first page arrives
+    private List<Book> mNetworkBooks;
+
+    //Books found in the local index
+    private List<Book> mIndexedBooks;
+
+    //Whether there is no network connection and only the local index is searched
+    private boolean mOffline;
 
-    //Amount of search results
-    private static final String NUMBER_OF_SEARCH_RESULTS = "&maxResults=30";
+    //Amount of search results in the first page, kept small so the first rows show quickly.
+    //The background prefetch refreshes pages of this size.
+    static final int FIRST_PAGE_SIZE = 10;
 
-    //URL for book data from Google API
-    private static final String GOOGLE_BOOK_URL =
-            "https://www.googleapis.com/books/v1/volumes?q=";
+    //Amount of search results in every later page
+    private static final int PAGE_SIZE = 20;
+
+    //Start loading the next page when the user scrolls this close to the end of the list
+    private static final int PREFETCH_DISTANCE = 5;
 
     //Adapter for the list of books
     private BookAdapter mAdapter;
@@ -49,6 +73,31 @@ public class BookResults extends AppCompatActivity implements LoaderCallbacks<Li
     //Constant value for the book loader ID
     private static final int BOOK_LOADER_ID = 1;
 
+    //Constant value for the local index loader ID
+    private static final int INDEX_LOADER_ID = 2;
+
+    //Maximum number of books shown from the local index
+    private static final int INDEX_RESULT_LIMIT = 50;
+
+    //Books published in this many most recent years pass the recent filter
+    private static final int RECENT_YEARS = 10;
+
+    //Keys of the chosen order and filters in the saved instance state
+    private static final String STATE_ORDER = "order";
+    private static final String STATE_RATED_ONLY = "rated_only";
+    private static final String STATE_RECENT_ONLY = "recent_only";
+
+    //Order the results are shown in
+    private ResultStore.Order mOrder = ResultStore.Order.RELEVANCE;
+
+    //Whether only rated books are shown
+    private boolean mRatedOnly;
+
+    //Whether only books published in the last RECENT_YEARS years are shown
+    private boolean mRecentOnly;
+
+    //Text shown when there are no books at all, or 0 until the first load finishes
+    private int mEmptyText;
 
 
     @Override
@@ -56,34 +105,37 @@ public class BookResults extends AppCompatActivity implements LoaderCallbacks<Li
         super.onCreate(savedInstanceState);
         setContentView(R.layout.book_results_activity);
 
+        //Let repeated searches be answered from the HTTP response cache
+        HttpClient.installCache(this);
+
         //Get the intent that started this activity and extract the string
         Intent intent = getIntent();
         String inputString = intent.getStringExtra(MainActivity.MAIN_TAG);
-        getSearchURl(inputString);
-
-        //Find a reference to the ListView in the layout
-        ListView bookListView = (ListView) findViewById(R.id.list);
-
-        //Create a new adapter that takes an empty list of books as imput
-        mAdapter = new BookAdapter(this, new ArrayList<Book>());
-
-        //Create a new empty textView
-        mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
-        //Set empty TextView
-        bookListView.setEmptyView(mEmptyStateTextView);
+        mQuery = QueryNormalizer.normalize(inputString);
+
+        //Remember the search, for the background prefetch, unless the activity is
+        //only being recreated
+        if(savedInstanceState == null){
+            final Context context = getApplicationContext();
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    QueryHistory.getInstance(context).recordSearch(mQuery);
+                }
+            });
+        }
 
-        //Set the adapter on the ListView
-        //So the list can be populated in the user interface
-        bookListView.setAdapter(mAdapter);
+        //Find a reference to the RecyclerView in the layout
+        RecyclerView bookListView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        bookListView.setLayoutManager(layoutManager);
+        bookListView.setHasFixedSize(true);
 
-        //Set an item click listener on the ListView, which sends an intent
-        //to open a website with more information about the selected book
-        bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        //Create a new adapter that starts with an empty list of books. Clicking a book
+        //sends an intent to open a website with more information about it.
+        mAdapter = new BookAdapter(this, new BookAdapter.OnBookClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-                //Find the current book that was clicked on
-                Book currentBook = mAdapter.getItem(position);
-
+            public void onBookClick(Book currentBook) {
                 //Convert the String webisteURL into a URI object (to pass inot the Internet constructor)
                 Uri bookUri = Uri.parse(currentBook.getWebsiteURL());
 
@@ -95,6 +147,57 @@ public class BookResults extends AppCompatActivity implements LoaderCallbacks<Li
             }
         });
 
+        //Create a new empty textView, shown only while the list is empty
+        mEmptyStateTextView = (TextView) findViewById(R.id.empty_view);
+        mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+
+        //Re-rank the results by how closely their titles match the query, in the order
+        //and with the filters chosen before the activity was recreated
+        if(savedInstanceState != null){
+            mOrder = ResultStore.Order.valueOf(savedInstanceState.getString(STATE_ORDER,
+                    ResultStore.Order.RELEVANCE.name()));
+            mRatedOnly = savedInstanceState.getBoolean(STATE_RATED_ONLY);
+            mRecentOnly = savedInstanceState.getBoolean(STATE_RECENT_ONLY);
+        }
+        mAdapter.setQuery(mQuery);
+        mAdapter.setOrder(mOrder);
+        mAdapter.setFilter(buildFilter());
+
+        //Set the adapter on the RecyclerView
+        //So the list can be populated in the user interface
+        bookListView.setAdapter(mAdapter);
+
+        //Prefetch the next page in the background when the user gets near the end
+        //of the list, so the new rows are usually there before they scroll into view
+        bookListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = mAdapter.getItemCount();
+                if(totalItemCount > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= totalItemCount - 1 - PREFETCH_DISTANCE){
+                    Loader<List<Book>> loader = getLoaderManager().getLoader(BOOK_LOADER_ID);
+                    if(loader instanceof BookLoader){
+                        ((BookLoader) loader).loadNextPage();
+                    }
+                }
+            }
+        });
+
         //Get a reference to the ConnectivityManager to check of network connectivity
         ConnectivityManager connMgr = (ConnectivityManager)
                 getSystemService(Context.CONNECTIVITY_SERVICE);
@@ -102,71 +205,208 @@ public class BookResults extends AppCompatActivity implements LoaderCallbacks<Li
         //Get details on currently activity default data network
         NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
 
+        //Get a reference to the LoaderManager, in order to interact with loaders
+        LoaderManager loaderManager = getLoaderManager();
+
+        //Show matching books from the local index right away, with or without a connection
+        loaderManager.initLoader(INDEX_LOADER_ID, null, this);
+
         //If there is a network connection, fetch data
         if(networkInfo != null && networkInfo.isConnected()){
-            //Get a reference to the LoaderManager, in order to interact with loaders
-            LoaderManager loaderManager = getLoaderManager();
-
             //Initialize the loader. Pass in the int ID constant defined above and pass in null
             //for the bundle. Pass in this activity for the Loadercallbacks parameter (which is valid
             //because this activity implements the LoaderCallbacks interface).
             loaderManager.initLoader(BOOK_LOADER_ID, null, this);
         } else {
-
-            //Otherwise, display error
-            //First, hide loading indicator so error message will be visible
-            View loadingIndicator = findViewById(R.id.loading_indicator);
-            loadingIndicator.setVisibility(View.GONE);
-
-            //Update empty state with noe connection error message
-            mEmptyStateTextView.setText(R.string.no_internet_connection);
+            //Otherwise, only the local index is searched and the error is displayed
+            //if it has nothing either
+            mOffline = true;
         }
 
     }
 
     @Override
     public Loader<List<Book>> onCreateLoader(int i, Bundle bundle){
+        if(i == INDEX_LOADER_ID){
+            //Create a new loader for the books in the local index
+            return new BookIndexLoader(this, mQuery, INDEX_RESULT_LIMIT);
+        }
         //Create a new loader for the given URL
-        return new BookLoader(this, searchURl);
+        return new BookLoader(this, mQuery, FIRST_PAGE_SIZE, PAGE_SIZE);
     }
 
     @Override
     public void onLoadFinished(Loader<List<Book>> loader, List<Book> books){
-        //Hide loading indicator because the data has been loaded
-        View loadingIndicator = findViewById(R.id.loading_indicator);
-        loadingIndicator.setVisibility(View.GONE);
-
-        //Set empty state text to display "No books found."
-        mEmptyStateTextView.setText(R.string.no_books);
+        if(loader.getId() == INDEX_LOADER_ID){
+            mIndexedBooks = books;
+        } else {
+            mNetworkBooks = books;
+            //Offer the titles of every complete page as completions in the search box
+            if(books != null && !((BookLoader) loader).isLoading()){
+                SearchSuggestions.getInstance().addTitles(books);
+            }
+        }
 
-        //Clear the dapter of previous book data
-        mAdapter.clear();
+        //Hide loading indicator once the network has answered, or as soon as
+        //there is something to show
+        if(loader.getId() == BOOK_LOADER_ID || mOffline || (books != null && !books.isEmpty())){
+            View loadingIndicator = findViewById(R.id.loading_indicator);
+            loadingIndicator.setVisibility(View.GONE);
+        }
 
-        //If there is a valid list of Book objects, then add them to the adapter's
-        //data set. This will trigger the ListView to update.
-        if(books != null && !books.isEmpty()){
-            mAdapter.addAll(books);
+        if(mOffline){
+            //Update empty state with no connection error message
+            mEmptyText = R.string.no_internet_connection;
+        } else if(loader.getId() == BOOK_LOADER_ID){
+            //Set empty state text to display "No books found."
+            mEmptyText = R.string.no_books;
         }
+        updateEmptyView();
 
+        //The adapter works out which rows were added or changed
+        mAdapter.setBooks(mergeResults());
     }
 
     @Override
     public void onLoaderReset(Loader<List<Book>> loader){
         //Loader reset, so we can clear out our existing data
-        mAdapter.clear();
+        if(loader.getId() == INDEX_LOADER_ID){
+            mIndexedBooks = null;
+        } else {
+            mNetworkBooks = null;
+        }
+        mAdapter.setBooks(mergeResults());
+    }
+
+    /**
+     * Returns the network results followed by the books from the local index that
+     * the network did not return
+     */
+    private List<Book> mergeResults(){
+        Map<String, Book> merged = new LinkedHashMap<>();
+        if(mNetworkBooks != null){
+            for(Book book : mNetworkBooks){
+                merged.put(book.getKey(), book);
+            }
+        }
+        if(mIndexedBooks != null){
+            for(Book book : mIndexedBooks){
+                String key = book.getKey();
+                if(!merged.containsKey(key)){
+                    merged.put(key, book);
+                }
+            }
+        }
+        return new ArrayList<>(merged.values());
     }
 
     /**
-     * Create a search query based on the user's input
+     * Shows the empty state text only while there are no books in the list
      */
-    private void getSearchURl(String query){
-        String formattedInput = null;
-        try {
-            formattedInput = URLEncoder.encode(query, "utf-8");
-        } catch (UnsupportedEncodingException e) {
-            Log.e(LOG_TAG, "Error trying to encode input. ", e);
+    private void updateEmptyView(){
+        if(mAdapter.getItemCount() == 0 && mAdapter.getTotalCount() > 0){
+            mEmptyStateTextView.setText(R.string.no_matching_books);
+        } else if(mEmptyText != 0){
+            mEmptyStateTextView.setText(mEmptyText);
         }
-        searchURl = GOOGLE_BOOK_URL + formattedInput + NUMBER_OF_SEARCH_RESULTS;
+        mEmptyStateTextView.setVisibility(mAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu){
+        getMenuInflater().inflate(R.menu.book_results, menu);
+        menu.findItem(orderItemId(mOrder)).setChecked(true);
+        menu.findItem(R.id.filter_rated).setChecked(mRatedOnly);
+        menu.findItem(R.id.filter_recent).setChecked(mRecentOnly);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item){
+        int id = item.getItemId();
+        for(ResultStore.Order order : ResultStore.Order.values()){
+            if(id == orderItemId(order)){
+                item.setChecked(true);
+                mOrder = order;
+                mAdapter.setOrder(order);
+                return true;
+            }
+        }
+        if(id == R.id.filter_rated || id == R.id.filter_recent){
+            //Checkable items are not checked by the menu itself
+            item.setChecked(!item.isChecked());
+            if(id == R.id.filter_rated){
+                mRatedOnly = item.isChecked();
+            } else {
+                mRecentOnly = item.isChecked();
+            }
+            mAdapter.setFilter(buildFilter());
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState){
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_ORDER, mOrder.name());
+        outState.putBoolean(STATE_RATED_ONLY, mRatedOnly);
+        outState.putBoolean(STATE_RECENT_ONLY, mRecentOnly);
+    }
+
+    /**
+     * Returns the id of the menu item for the order
+     */
+    private static int orderItemId(ResultStore.Order order){
+        switch(order){
+            case RATING:
+                return R.id.sort_rating;
+            case NEWEST:
+                return R.id.sort_newest;
+            case TITLE:
+                return R.id.sort_title;
+            default:
+                return R.id.sort_relevance;
+        }
+    }
+
+    /**
+     * Returns the filter for the chosen options
+     */
+    private ResultStore.Filter buildFilter(){
+        int minYear = mRecentOnly
+                ? Calendar.getInstance().get(Calendar.YEAR) - RECENT_YEARS + 1 : 0;
+        return new ResultStore.Filter(minYear, mRatedOnly);
+    }
+
+    /**
+     * Adds the search statistics to {@code adb shell dumpsys activity}
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args){
+        super.dump(prefix, fd, writer, args);
+        DebugStats.dump(this, prefix, writer);
+    }
+
+    @Override
+    protected void onStop(){
+        super.onStop();
+        //Make sure cached responses survive the process being killed
+        HttpClient.flushCache();
+    }
+
+    @Override
+    protected void onDestroy(){
+        super.onDestroy();
+        //Nothing will show the thumbnails still loading, so stop their downloads
+        mAdapter.cancelThumbnails();
+    }
+
+    @Override
+    public void onTrimMemory(int level){
+        super.onTrimMemory(level);
+        //Give back the memory held by decoded thumbnails
+        ThumbnailCache.getInstance(this).trimMemory(level);
     }
 
 }
@@ -0,0 +1,160 @@
+package com.book_search.android.booksearch;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.book_search.core.GoogleBooksApi;
+import com.book_search.core.OpenLibrarySource;
+import com.book_search.core.SearchMetrics;
+
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Opens connections to the search and thumbnail hosts before the user searches, so the
+ * first search of a session finds its DNS lookups done and idle connections waiting in
+ * {@link HttpClient}'s keep-alive pool.
+ *
+ * Warming is speculative and cheap: a HEAD request per host, at most once a minute,
+ * and only when there is a connection. Warming only saves the DNS lookups and the
+ * handshakes, so it is judged by the time to first byte of the first search of the
+ * process, from {@link SearchMetrics}, rather than by the whole search, which also
+ * counts the download, the parse and the slower catalog. The time is kept along with
+ * whether the search was warmed, so sessions can be compared in dumpsys.
+ */
+
+final class ConnectionWarmer {
+    //Tag for log messages
+    private static final String LOG_TAG = ConnectionWarmer.class.getSimpleName();
+
+    //Shortest time between two warm-ups, in milliseconds. Idle pooled connections
+    //are kept for longer than this, so warming more often would only repeat the work.
+    private static final long MIN_WARM_INTERVAL = 60 * 1000;
+
+    //Hosts to warm, the search APIs before the thumbnail hosts
+    private static final String[] WARM_URLS = {
+            GoogleBooksApi.VOLUMES_URL,
+            OpenLibrarySource.SEARCH_URL,
+            "http://books.google.com/",
+            "https://covers.openlibrary.org/"
+    };
+
+    //Runs the warm-ups one after the other, off the main thread
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    //Time of the last warm-up started, from SystemClock.elapsedRealtime(), or 0
+    private static long sLastWarmStart;
+
+    //Time the last warm-up finished, or 0 if none has
+    private static volatile long sLastWarmEnd;
+
+    //Time to first byte of the first search of the process, in milliseconds, or -1
+    //before it
+    private static long sFirstByteMillis = -1;
+
+    //Whether connections had been warmed before the first search
+    private static boolean sFirstSearchWarmed;
+
+    private ConnectionWarmer(){
+    }
+
+    /**
+     * Warms the connections in the background, unless they were warmed in the last
+     * minute or there is no network. Safe to call on every keystroke.
+     */
+    static void warm(Context context){
+        synchronized (ConnectionWarmer.class){
+            long now = SystemClock.elapsedRealtime();
+            if(sLastWarmStart != 0 && now - sLastWarmStart < MIN_WARM_INTERVAL){
+                return;
+            }
+            ConnectivityManager connMgr = (ConnectivityManager)
+                    context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+            if(networkInfo == null || !networkInfo.isConnected()){
+                return;
+            }
+            sLastWarmStart = now;
+        }
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmHosts();
+            }
+        });
+    }
+
+    /**
+     * Resolves every host, then opens a pooled connection to each
+     */
+    private static void warmHosts(){
+        long start = SystemClock.elapsedRealtime();
+        List<URL> urls = new ArrayList<>(WARM_URLS.length);
+        for(String warmUrl : WARM_URLS){
+            try {
+                urls.add(new URL(warmUrl));
+            } catch (MalformedURLException e){
+                throw new AssertionError(e);
+            }
+        }
+        //Resolving first puts every address in the DNS cache at once, instead of
+        //after the handshakes of the hosts before it
+        for(URL url : urls){
+            try {
+                InetAddress.getAllByName(url.getHost());
+            } catch (UnknownHostException e){
+                Log.w(LOG_TAG, "Unable to resolve " + url.getHost(), e);
+            }
+        }
+        int warmed = 0;
+        for(URL url : urls){
+            if(HttpClient.getInstance().warm(url)){
+                warmed++;
+            }
+        }
+        sLastWarmEnd = SystemClock.elapsedRealtime();
+        Log.i(LOG_TAG, "Warmed " + warmed + " of " + urls.size() + " hosts in "
+                + (sLastWarmEnd - start) + "ms");
+    }
+
+    /**
+     * Records the time to first byte of the first search of the process, and whether
+     * it was warmed, once a search has loaded its first page. Does nothing if no search
+     * has reached the network yet, such as when the page came from the cache.
+     * @param startNanos is when the search started, from System.nanoTime()
+     */
+    static synchronized void recordSearch(long startNanos){
+        if(sFirstByteMillis != -1){
+            return;
+        }
+        long firstByteNanos = SearchMetrics.getInstance().getFirstSearchFirstByteNanos();
+        if(firstByteNanos == -1){
+            return;
+        }
+        sFirstByteMillis = firstByteNanos / 1000000;
+        //Warmed means a warm-up finished before the search started
+        long searchStart = SystemClock.elapsedRealtime()
+                - (System.nanoTime() - startNanos) / 1000000;
+        sFirstSearchWarmed = sLastWarmEnd != 0 && sLastWarmEnd <= searchStart;
+        Log.i(LOG_TAG, "First search got its first byte in " + sFirstByteMillis + "ms, "
+                + (sFirstSearchWarmed ? "warmed" : "cold"));
+    }
+
+    /**
+     * Returns a one line summary of the warm-ups and the time to first byte of the
+     * first search
+     */
+    static synchronized String summary(){
+        return "ConnectionWarmer{lastWarm=" + sLastWarmEnd + ", firstSearchFirstByteMillis="
+                + sFirstByteMillis + ", firstSearchWarmed=" + sFirstSearchWarmed + "}";
+    }
+}
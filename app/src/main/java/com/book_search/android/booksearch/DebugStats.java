@@ -0,0 +1,89 @@
+package com.book_search.android.booksearch;
+
+import android.content.Context;
+
+import com.book_search.core.BookSource;
+import com.book_search.core.CircuitBreaker;
+import com.book_search.core.FederatedSearch;
+import com.book_search.core.HttpBookSource;
+import com.book_search.core.SearchMetrics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * Writes the app's performance statistics for {@code adb shell dumpsys activity}, so
+ * searches can be compared across devices and networks:
+ *
+ * <pre>adb shell dumpsys activity com.book_search.android.booksearch/.BookResults</pre>
+ *
+ * Every activity that shows search results forwards its dump() here.
+ */
+
+final class DebugStats {
+
+    private DebugStats(){
+    }
+
+    /**
+     * Writes the latency of every search phase, the bytes transferred, the retry,
+     * hedging and circuit breaker state, and the connection pool and cache statistics
+     */
+    static void dump(Context context, String prefix, PrintWriter writer){
+        writer.print(prefix);
+        writer.println("Search latency:");
+        SearchMetrics.getInstance().dump(prefix + "  ", writer);
+
+        writer.print(prefix);
+        writer.println("Pools:");
+        for(String line : BookExecutors.summary().split("\n")){
+            writer.print(prefix + "  ");
+            writer.println(line);
+        }
+
+        writer.print(prefix);
+        writer.println(HttpClient.getInstance());
+        writer.print(prefix);
+        writer.println(ConnectionWarmer.summary());
+        writer.print(prefix);
+        writer.print("Searches: stale=");
+        writer.print(QueryUtils.getStaleResponseCount());
+        writer.print(" deduplicated=");
+        writer.println(QueryUtils.getDeduplicatedCount());
+        writer.print(prefix);
+        FederatedSearch search = QueryUtils.getFederatedSearch();
+        writer.println(search);
+        for(BookSource source : search.getSources()){
+            if(source instanceof HttpBookSource){
+                writer.print(prefix);
+                writer.print(source.getName());
+                writer.print(": ");
+                writer.println(((HttpBookSource) source).getRequestPolicy());
+            }
+        }
+        writer.print(prefix);
+        writer.println(SearchSuggestions.getInstance());
+        for(Map.Entry<String, CircuitBreaker> breaker : QueryUtils.getThumbnailBreakers().entrySet()){
+            writer.print(prefix);
+            writer.print(breaker.getKey());
+            writer.print(": ");
+            writer.println(breaker.getValue());
+        }
+
+        writer.print(prefix);
+        writer.println(new Prefetcher(context));
+
+        ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(context);
+        writer.print(prefix);
+        writer.print("Thumbnails: memoryHits=");
+        writer.print(thumbnailCache.getMemoryHitCount());
+        writer.print(" diskHits=");
+        writer.print(thumbnailCache.getDiskHitCount());
+        writer.print(" misses=");
+        writer.print(thumbnailCache.getMissCount());
+        writer.print(" allocatedBytes=");
+        writer.print(ThumbnailDecoder.getAllocatedBytes());
+        writer.print(" reusedBytes=");
+        writer.println(ThumbnailDecoder.getReusedBytes());
+    }
+}
@@ -0,0 +1,291 @@
+package com.book_search.android.booksearch;
+
+import android.content.Context;
+import android.net.http.HttpResponseCache;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.book_search.core.Connector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The HTTP client shared by the book search and the thumbnail downloads.
+ *
+ * Connections are opened with the same timeouts and, once the response has been read
+ * to the end and its stream closed, go back to HttpURLConnection's keep-alive pool
+ * instead of being disconnected. The next request to the same host then reuses the
+ * socket and skips the TCP and TLS handshakes.
+ *
+ * Once {@link #installCache} has been called, responses are also stored in an on-disk
+ * {@link HttpResponseCache}, which honors Cache-Control and max-age and revalidates
+ * stale entries with If-None-Match when the server sent an ETag.
+ */
+
+public final class HttpClient implements Connector {
+    //Tag for log messages
+    private static final String LOG_TAG = HttpClient.class.getSimpleName();
+
+    //Default timeout for establishing a connection, in milliseconds
+    private static final int DEFAULT_CONNECT_TIMEOUT = 15000;
+
+    //Default timeout for reading from a connection, in milliseconds
+    private static final int DEFAULT_READ_TIMEOUT = 10000;
+
+    //Maximum number of idle connections kept alive per host
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    //Name of the directory, inside the app's cache directory, that holds HTTP responses
+    private static final String RESPONSE_CACHE_DIR = "http";
+
+    //Maximum size of the HTTP response cache in bytes
+    private static final long RESPONSE_CACHE_SIZE = 10 * 1024 * 1024;
+
+    //A connect() that finishes faster than this was served from the pool
+    private static final long POOLED_CONNECT_THRESHOLD = 5;
+
+    //Single client instance shared by every request
+    private static final HttpClient sInstance = new HttpClient();
+
+    //Timeouts applied to every new connection
+    private volatile int mConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile int mReadTimeout = DEFAULT_READ_TIMEOUT;
+
+    //Pool statistics
+    private final AtomicInteger mRequests = new AtomicInteger();
+    private final AtomicInteger mPooledConnects = new AtomicInteger();
+    private final AtomicInteger mReleased = new AtomicInteger();
+    private final AtomicInteger mDiscarded = new AtomicInteger();
+    private final AtomicInteger mWarmed = new AtomicInteger();
+
+    private HttpClient(){
+        //Configure the platform keep-alive pool before the first connection is made
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+    }
+
+    /**
+     * Returns the client shared by the whole app
+     */
+    public static HttpClient getInstance(){
+        return sInstance;
+    }
+
+    /**
+     * Installs the on-disk HTTP response cache, if it is not installed yet
+     */
+    public static synchronized void installCache(Context context){
+        if(HttpResponseCache.getInstalled() != null){
+            return;
+        }
+        File cacheDir = new File(context.getApplicationContext().getCacheDir(), RESPONSE_CACHE_DIR);
+        try {
+            HttpResponseCache.install(cacheDir, RESPONSE_CACHE_SIZE);
+        } catch (IOException e){
+            Log.e(LOG_TAG, "Unable to install the HTTP response cache. ", e);
+        }
+    }
+
+    /**
+     * Writes pending HTTP response cache entries to disk
+     */
+    public static void flushCache(){
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if(cache != null){
+            cache.flush();
+        }
+    }
+
+    /**
+     * Sets the connect and read timeouts, in milliseconds, for connections opened from now on
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout){
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    /**
+     * Opens and connects a GET request to the given URL, going through the HTTP
+     * response cache. The caller must hand the connection back through
+     * {@link #release} or {@link #abort}.
+     */
+    public HttpURLConnection open(URL url) throws IOException{
+        return open(url, true, null);
+    }
+
+    /**
+     * Opens and connects a GET request to the given URL
+     * @param useCaches is whether the HTTP response cache may be used
+     * @param cacheControl is an optional Cache-Control request header, such as
+     *                     "only-if-cached, max-stale=60"
+     */
+    @Override
+    public HttpURLConnection open(URL url, boolean useCaches, String cacheControl)
+            throws IOException{
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(mConnectTimeout /* milliseconds */);
+        urlConnection.setReadTimeout(mReadTimeout /* milliseconds */);
+        urlConnection.setRequestMethod("GET");
+        urlConnection.setUseCaches(useCaches);
+        //Asking for gzip explicitly turns off the platform's transparent decompression,
+        //so the byte counters see the compressed size
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        urlConnection.setRequestProperty("User-Agent", USER_AGENT);
+        if(cacheControl != null){
+            urlConnection.addRequestProperty("Cache-Control", cacheControl);
+        }
+
+        mRequests.incrementAndGet();
+        long start = SystemClock.elapsedRealtime();
+        try {
+            urlConnection.connect();
+        } catch (IOException e){
+            abort(urlConnection);
+            throw e;
+        }
+        if(SystemClock.elapsedRealtime() - start < POOLED_CONNECT_THRESHOLD){
+            mPooledConnects.incrementAndGet();
+        }
+        return urlConnection;
+    }
+
+    /**
+     * Opens a connection to the URL's host with a HEAD request and hands it back to
+     * the keep-alive pool, so the next request to the same host skips the DNS lookup
+     * and the TCP and TLS handshakes. Redirects are not followed and any status will
+     * do, since only the connection matters.
+     * This is a blocking call and must not be made on the main thread.
+     * @return whether the connection was pooled
+     */
+    public boolean warm(URL url){
+        HttpURLConnection urlConnection = null;
+        try {
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setConnectTimeout(mConnectTimeout /* milliseconds */);
+            urlConnection.setReadTimeout(mReadTimeout /* milliseconds */);
+            urlConnection.setRequestMethod("HEAD");
+            urlConnection.setUseCaches(false);
+            urlConnection.setInstanceFollowRedirects(false);
+            int responseCode = urlConnection.getResponseCode();
+            release(urlConnection, responseCode < 400 ? urlConnection.getInputStream() : null);
+            mWarmed.incrementAndGet();
+            return true;
+        } catch (IOException e){
+            Log.w(LOG_TAG, "Unable to warm a connection to " + url.getHost(), e);
+            abort(urlConnection);
+            return false;
+        }
+    }
+
+    /**
+     * Reads whatever is left of the response and closes its stream, which returns
+     * the connection to the keep-alive pool. Error responses are drained as well.
+     */
+    @Override
+    public void release(HttpURLConnection urlConnection, InputStream inputStream){
+        if(urlConnection == null){
+            return;
+        }
+        try {
+            if(inputStream == null){
+                inputStream = urlConnection.getErrorStream();
+            }
+            if(inputStream != null){
+                byte[] buffer = new byte[1024];
+                while(inputStream.read(buffer) != -1){
+                    //Drain the stream so the connection can be reused
+                }
+                inputStream.close();
+            }
+            mReleased.incrementAndGet();
+        } catch (IOException e){
+            Log.w(LOG_TAG, "Unable to release connection, closing it. ", e);
+            abort(urlConnection);
+        }
+    }
+
+    /**
+     * Closes the connection without returning it to the pool, for example after
+     * a failed or abandoned request
+     */
+    @Override
+    public void abort(HttpURLConnection urlConnection){
+        if(urlConnection != null){
+            urlConnection.disconnect();
+            mDiscarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of requests opened through the client
+     */
+    public int getRequestCount(){
+        return mRequests.get();
+    }
+
+    /**
+     * Returns the number of requests whose connect() returned almost immediately,
+     * which means an idle pooled connection was reused
+     */
+    public int getPooledConnectCount(){
+        return mPooledConnects.get();
+    }
+
+    /**
+     * Returns the number of connections returned to the keep-alive pool
+     */
+    public int getReleasedCount(){
+        return mReleased.get();
+    }
+
+    /**
+     * Returns the number of connections that were closed instead of pooled
+     */
+    public int getDiscardedCount(){
+        return mDiscarded.get();
+    }
+
+    /**
+     * Returns the number of connections opened ahead of time by {@link #warm}
+     */
+    public int getWarmedCount(){
+        return mWarmed.get();
+    }
+
+    /**
+     * Returns the fraction of requests through the response cache that were served
+     * from it, fully or after a 304 revalidation, or 0 if the cache is not installed
+     */
+    public static float getCacheHitRate(){
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if(cache == null || cache.getRequestCount() == 0){
+            return 0f;
+        }
+        return (float) cache.getHitCount() / cache.getRequestCount();
+    }
+
+    /**
+     * Returns a one line summary of the pool and response cache statistics
+     */
+    @Override
+    public String toString(){
+        StringBuilder summary = new StringBuilder("HttpClient{requests=").append(getRequestCount())
+                .append(", pooledConnects=").append(getPooledConnectCount())
+                .append(", released=").append(getReleasedCount())
+                .append(", discarded=").append(getDiscardedCount())
+                .append(", warmed=").append(getWarmedCount());
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if(cache != null){
+            summary.append(", cacheRequests=").append(cache.getRequestCount())
+                    .append(", cacheHits=").append(cache.getHitCount())
+                    .append(", cacheNetwork=").append(cache.getNetworkCount())
+                    .append(", cacheSize=").append(cache.size());
+        }
+        return summary.append('}').toString();
+    }
+}
@@ -0,0 +1,227 @@
+package com.book_search.android.booksearch;
+
+import com.book_search.core.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of requests that are currently running, keyed by their canonical URL.
+ *
+ * When a request is made for a key that is already in flight, the caller is handed
+ * the running request instead of starting a new one, so concurrent identical requests
+ * share one network call and every caller gets the same result. A key leaves the
+ * registry as soon as its request completes.
+ *
+ * Every caller passes its own {@link CancellationToken}. A shared request keeps running
+ * while any of its callers still wants it, and is cancelled, connections and all,
+ * once the last one cancels. Callers that can't block may add a listener to the
+ * request instead of waiting for it.
+ */
+
+public class InFlightRequests<V> {
+
+    /**
+     * Work shared by every caller of a request
+     */
+    public interface Work<V> {
+        /**
+         * Does the work. The token is cancelled once every caller has cancelled.
+         */
+        V run(CancellationToken token) throws Exception;
+    }
+
+    //Requests that are running, by key
+    private final ConcurrentHashMap<String, Request<V>> mInFlight = new ConcurrentHashMap<>();
+
+    //Number of requests that joined one already in flight
+    private final AtomicInteger mDeduplicated = new AtomicInteger();
+
+    /**
+     * Returns the request in flight for the key, or starts the work on the executor if
+     * there is none
+     * @param caller is the token of the caller, which stops its interest in the request
+     */
+    public Request<V> submit(String key, Work<V> work, Executor executor,
+                             CancellationToken caller){
+        while(true){
+            Request<V> task = new RequestTask(key, work);
+            Request<V> running = mInFlight.putIfAbsent(key, task);
+            if(running == null){
+                task.join(caller);
+                executor.execute(task);
+                return task;
+            }
+            if(running.join(caller)){
+                mDeduplicated.incrementAndGet();
+                return running;
+            }
+            //Every caller of the running request has left and it is being cancelled
+            mInFlight.remove(key, running);
+        }
+    }
+
+    /**
+     * Runs the work on the calling thread and returns its result, or, if a request
+     * for the key is already in flight, waits for that request and returns its result
+     * @param caller is the token of the caller, which stops its interest in the request
+     * @throws CancellationException if every caller cancelled before the work was done
+     */
+    public V execute(String key, Work<V> work, CancellationToken caller)
+            throws ExecutionException, InterruptedException{
+        while(true){
+            Request<V> task = new RequestTask(key, work);
+            Request<V> running = mInFlight.putIfAbsent(key, task);
+            if(running == null){
+                task.join(caller);
+                task.run();
+                return task.get();
+            }
+            if(running.join(caller)){
+                mDeduplicated.incrementAndGet();
+                return running.get();
+            }
+            mInFlight.remove(key, running);
+        }
+    }
+
+    /**
+     * Returns the number of requests that were served by joining one already in flight
+     */
+    public int getDeduplicatedCount(){
+        return mDeduplicated.get();
+    }
+
+    /**
+     * A request in flight, which lets callers know when it completes
+     */
+    public static class Request<V> extends FutureTask<V> {
+        //Cancelled once every caller has left
+        private final CancellationToken mToken;
+
+        //Listeners to run once the request completes, or null once it has
+        private List<Runnable> mListeners = new ArrayList<>();
+
+        //Callers still waiting for the result, with the listener each one leaves with
+        private final List<CancellationToken> mCallers = new ArrayList<>();
+        private final List<Runnable> mLeaves = new ArrayList<>();
+        private int mCallerCount;
+
+        Request(Work<V> work){
+            this(work, new CancellationToken());
+        }
+
+        private Request(final Work<V> work, final CancellationToken token){
+            super(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                    return work.run(token);
+                }
+            });
+            mToken = token;
+        }
+
+        /**
+         * Adds a caller, unless every earlier caller has already left. Returns whether
+         * the caller joined.
+         */
+        boolean join(CancellationToken caller){
+            Runnable leave = new Runnable() {
+                @Override
+                public void run() {
+                    leave();
+                }
+            };
+            synchronized(this){
+                if(mToken.isCancelled()){
+                    return false;
+                }
+                if(isDone()){
+                    return true;
+                }
+                mCallerCount++;
+                mCallers.add(caller);
+                mLeaves.add(leave);
+            }
+            //Runs right away if the caller has already cancelled
+            caller.addListener(leave);
+            return true;
+        }
+
+        /**
+         * Removes a caller that cancelled, and cancels the request if it was the last one
+         */
+        private void leave(){
+            synchronized(this){
+                if(--mCallerCount > 0 || isDone()){
+                    return;
+                }
+            }
+            mToken.cancel();
+            cancel(false);
+        }
+
+        /**
+         * Runs the listener on the executor once the request completes, or right away
+         * if it already has
+         */
+        public void addListener(final Runnable listener, final Executor executor){
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    executor.execute(listener);
+                }
+            };
+            synchronized(this){
+                if(mListeners != null){
+                    mListeners.add(task);
+                    return;
+                }
+            }
+            task.run();
+        }
+
+        @Override
+        protected void done() {
+            List<Runnable> listeners;
+            synchronized(this){
+                listeners = mListeners;
+                mListeners = null;
+                //The callers' tokens may outlive the request, so stop listening to them
+                for(int i = 0; i < mCallers.size(); i++){
+                    mCallers.get(i).removeListener(mLeaves.get(i));
+                }
+                mCallers.clear();
+                mLeaves.clear();
+            }
+            for(Runnable listener : listeners){
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * A request that removes itself from the registry when it completes
+     */
+    private class RequestTask extends Request<V> {
+        private final String mKey;
+
+        RequestTask(String key, Work<V> work){
+            super(work);
+            mKey = key;
+        }
+
+        @Override
+        protected void done() {
+            mInFlight.remove(mKey, this);
+            super.done();
+        }
+    }
+}
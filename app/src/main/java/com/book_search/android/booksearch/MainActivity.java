@@ -1,20 +1,73 @@
 package com.book_search.android.booksearch;
 
+import android.app.LoaderManager.LoaderCallbacks;
 import android.content.Intent;
+import android.content.Loader;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
 
-public class MainActivity extends AppCompatActivity {
+import com.book_search.core.PrefixResultCache;
+import com.book_search.core.QueryNormalizer;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.List;
+
+public class MainActivity extends AppCompatActivity implements LoaderCallbacks<List<Book>> {
     //Tag
     public static final String MAIN_TAG = "com.bookSearch.MESSAGE";
+
+    //Constant value for the live search loader ID
+    private static final int LIVE_LOADER_ID = 1;
+
+    //Key for the query in the live search loader's arguments
+    private static final String ARG_QUERY = "query";
+
+    //Time to wait after the last keystroke before searching, in milliseconds
+    private static final long DEBOUNCE_DELAY = 300;
+
+    //Shortest input that is searched while typing
+    private static final int MIN_QUERY_LENGTH = 3;
+
+    //Number of live results shown while typing
+    private static final int LIVE_RESULT_COUNT = 10;
+
+    //Adapter for the live results
+    private BookAdapter mAdapter;
+
+    //Handler used to debounce keystrokes
+    private final Handler mHandler = new Handler();
+
+    //Searches for the current input once the user stops typing
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            EditText input = (EditText) findViewById(R.id.input_edit_text);
+            startLiveSearch(input.getText().toString());
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        //Let repeated searches be answered from the HTTP response cache
+        HttpClient.installCache(this);
+
+        //Refresh the user's usual searches while the device charges on Wi-Fi
+        Prefetcher.schedule(this);
+
         //Find the search button
         Button search = (Button) findViewById(R.id.search_button);
         //set a click listener on the Button
@@ -25,11 +78,145 @@ public class MainActivity extends AppCompatActivity {
                 Intent intent = new Intent(MainActivity.this, BookResults.class);
                 EditText input = (EditText) findViewById(R.id.input_edit_text);
                 String inputString = input.getText().toString();
+                SearchSuggestions.getInstance().addQuery(inputString);
 
                 //Add the EdtText's value to the intent
                 intent.putExtra(MAIN_TAG, inputString);
                 startActivity(intent);
             }
         });
+
+        //Set up the list of live results
+        RecyclerView liveResults = (RecyclerView) findViewById(R.id.live_results);
+        liveResults.setLayoutManager(new LinearLayoutManager(this));
+        liveResults.setHasFixedSize(true);
+        mAdapter = new BookAdapter(this, new BookAdapter.OnBookClickListener() {
+            @Override
+            public void onBookClick(Book currentBook) {
+                //Open the website of the book that was clicked on
+                Uri bookUri = Uri.parse(currentBook.getWebsiteURL());
+                startActivity(new Intent(Intent.ACTION_VIEW, bookUri));
+            }
+        });
+        liveResults.setAdapter(mAdapter);
+
+        //Suggest past queries and fetched titles as the user types
+        AutoCompleteTextView input = (AutoCompleteTextView) findViewById(R.id.input_edit_text);
+        input.setAdapter(new SuggestionAdapter(this));
+
+        //A user about to search is worth opening the connections for, so the first
+        //request skips the DNS lookups and handshakes
+        input.setOnFocusChangeListener(new View.OnFocusChangeListener() {
+            @Override
+            public void onFocusChange(View view, boolean hasFocus) {
+                if(hasFocus){
+                    ConnectionWarmer.warm(MainActivity.this);
+                }
+            }
+        });
+
+        //Search as the user types, but only once they pause, so a burst of
+        //keystrokes results in a single request
+        input.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                ConnectionWarmer.warm(MainActivity.this);
+                mHandler.removeCallbacks(mSearchRunnable);
+                mHandler.postDelayed(mSearchRunnable, DEBOUNCE_DELAY);
+            }
+        });
+
+        //Reconnect to a live search that survived a configuration change
+        if(getLoaderManager().getLoader(LIVE_LOADER_ID) != null){
+            getLoaderManager().initLoader(LIVE_LOADER_ID, null, this);
+        }
+    }
+
+    @Override
+    protected void onDestroy(){
+        super.onDestroy();
+        mHandler.removeCallbacks(mSearchRunnable);
+        mAdapter.cancelThumbnails();
+    }
+
+    /**
+     * Restarts the live search loader with the newest query. Restarting cancels the
+     * load for the previous query, and its results are discarded.
+     *
+     * Results already cached for the query, or for a shorter query it adds words to,
+     * are shown right away. If the query's own results are all the catalogs have,
+     * nothing is requested; narrowed results are always checked against the network.
+     */
+    private void startLiveSearch(String input){
+        String query = QueryNormalizer.normalize(input);
+        if(query.length() < MIN_QUERY_LENGTH){
+            getLoaderManager().destroyLoader(LIVE_LOADER_ID);
+            mAdapter.clear();
+            return;
+        }
+
+        PrefixResultCache.Hit<Book> cached = SearchSuggestions.getInstance().getCachedResults(query);
+        if(cached != null && cached.isComplete()){
+            getLoaderManager().destroyLoader(LIVE_LOADER_ID);
+            mAdapter.setBooks(cached.getItems());
+            return;
+        }
+        if(cached != null && !cached.getItems().isEmpty()){
+            //Show the cached results while the network catches up
+            mAdapter.setBooks(cached.getItems());
+        }
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query);
+        getLoaderManager().restartLoader(LIVE_LOADER_ID, args, this);
+    }
+
+    @Override
+    public Loader<List<Book>> onCreateLoader(int i, Bundle bundle){
+        String query = bundle.getString(ARG_QUERY);
+        //A single page is enough for live results
+        return new BookLoader(this, query, LIVE_RESULT_COUNT, LIVE_RESULT_COUNT);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<List<Book>> loader, List<Book> books){
+        //Only the rows that differ from the previous query's results are rebound
+        mAdapter.setBooks(books);
+
+        //Remember loaded pages, not the partial ones delivered while parsing. The merged
+        //page says nothing about whether the catalogs have more, so ask the loader.
+        BookLoader bookLoader = (BookLoader) loader;
+        if(books != null && !bookLoader.isLoading()){
+            SearchSuggestions.getInstance().addResults(bookLoader.getQuery(), books,
+                    bookLoader.isComplete());
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<List<Book>> loader){
+        mAdapter.clear();
+    }
+
+    /**
+     * Adds the search statistics to {@code adb shell dumpsys activity}
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args){
+        super.dump(prefix, fd, writer, args);
+        DebugStats.dump(this, prefix, writer);
+    }
+
+    @Override
+    public void onTrimMemory(int level){
+        super.onTrimMemory(level);
+        //Give back the memory held by decoded thumbnails
+        ThumbnailCache.getInstance(this).trimMemory(level);
     }
 }
@@ -0,0 +1,44 @@
+package com.book_search.android.booksearch;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.Build;
+
+/**
+ * Runs the {@link Prefetcher} when the JobScheduler finds the device charging on an
+ * unmetered network. The job is scheduled by {@link Prefetcher#schedule}.
+ */
+
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class PrefetchJobService extends JobService {
+
+    //Prefetcher of the job that is running, or null
+    private volatile Prefetcher mPrefetcher;
+
+    @Override
+    public boolean onStartJob(final JobParameters params){
+        final Prefetcher prefetcher = new Prefetcher(this);
+        mPrefetcher = prefetcher;
+        //Jobs start on the main thread, so the prefetch gets its own
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                prefetcher.run();
+                mPrefetcher = null;
+                jobFinished(params, false);
+            }
+        }, "prefetch").start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params){
+        //The conditions no longer hold, so stop and try again next time they do
+        Prefetcher prefetcher = mPrefetcher;
+        if(prefetcher != null){
+            prefetcher.cancel();
+        }
+        return true;
+    }
+}
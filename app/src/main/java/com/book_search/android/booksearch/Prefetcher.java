@@ -0,0 +1,224 @@
+package com.book_search.android.booksearch;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import com.book_search.core.CancellationToken;
+import com.book_search.core.PriorityExecutor.Priority;
+import com.book_search.core.SearchMetrics;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Refreshes the first page and the thumbnails of the user's most recent and most
+ * frequent queries ahead of time, so those searches open from the local index and
+ * the thumbnail cache.
+ *
+ * Runs from {@link PrefetchJobService} only while the device is charging on an
+ * unmetered network, and never spends more than a daily byte budget. What was
+ * prefetched, and how often a search then used it, is kept in {@link QueryHistory}.
+ * Devices older than Lollipop have no JobScheduler and are not prefetched for.
+ *
+ * Searches and thumbnail downloads run on the shared pools with prefetch priority, so
+ * they only start when nothing the user is looking at is waiting.
+ */
+
+final class Prefetcher {
+    //Tag for log messages
+    private static final String LOG_TAG = Prefetcher.class.getSimpleName();
+
+    //Id of the scheduled job
+    private static final int JOB_ID = 1;
+
+    //How often the job runs, when the conditions allow, in milliseconds
+    private static final long JOB_INTERVAL = 24 * 60 * 60 * 1000L;
+
+    //Number of most recent and of most frequent queries refreshed by a run
+    private static final int RECENT_QUERIES = 5;
+    private static final int FREQUENT_QUERIES = 5;
+
+    //Bytes the prefetch may download per day, counted in UTC days
+    private static final long DAILY_BYTE_BUDGET = 5 * 1024 * 1024;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    //Preferences holding the budget and the statistics
+    private static final String PREFS_NAME = "prefetch";
+    private static final String KEY_BUDGET_DAY = "budget_day";
+    private static final String KEY_BUDGET_BYTES = "budget_bytes";
+    private static final String KEY_TOTAL_BYTES = "total_bytes";
+    private static final String KEY_RUNS = "runs";
+    private static final String KEY_LAST_RUN = "last_run";
+
+    //Application context
+    private final Context mContext;
+
+    //Preferences holding the budget and the statistics
+    private final SharedPreferences mPrefs;
+
+    //Cancelled when the job has to stop early
+    private final CancellationToken mToken = new CancellationToken();
+
+    Prefetcher(Context context){
+        mContext = context.getApplicationContext();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Schedules the daily prefetch job unless it is already scheduled
+     */
+    static void schedule(Context context){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP){
+            scheduleJob(context.getApplicationContext());
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context){
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(
+                Context.JOB_SCHEDULER_SERVICE);
+        for(JobInfo job : scheduler.getAllPendingJobs()){
+            if(job.getId() == JOB_ID){
+                return;
+            }
+        }
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, PrefetchJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(JOB_INTERVAL)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    /**
+     * Stops the run, aborting the request in progress
+     */
+    void cancel(){
+        BookExecutors.cancel(mToken);
+    }
+
+    /**
+     * Refreshes every query worth prefetching until they are done, the day's budget is
+     * spent or the run is cancelled. This is a blocking call and must not be made on
+     * the main thread.
+     */
+    void run(){
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        //The job can run without an activity having started, so set up the HTTP cache
+        HttpClient.installCache(mContext);
+
+        QueryHistory history = QueryHistory.getInstance(mContext);
+        BookIndex index = BookIndex.getInstance(mContext);
+        ThumbnailCache thumbnailCache = ThumbnailCache.getInstance(mContext);
+        //Fetch the same thumbnail variant the list will ask for
+        int thumbnailSize = mContext.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+        List<String> queries = history.getPrefetchCandidates(RECENT_QUERIES, FREQUENT_QUERIES);
+
+        int prefetched = 0;
+        for(String query : queries){
+            if(mToken.isCancelled() || getRemainingBytes() <= 0){
+                break;
+            }
+            //Requests are counted by what they downloaded. A search the user makes
+            //during the run is counted too, which only errs on the side of the budget.
+            long start = getDownloadedBytes();
+            //Waits for the catalogs rather than a stale cached copy, so a query is only
+            //recorded as prefetched once fresh results are stored
+            List<Book> books = QueryUtils.fetchBookData(query, 0, BookResults.FIRST_PAGE_SIZE,
+                    Priority.PREFETCH, mToken);
+            if(books != null && !mToken.isCancelled()){
+                index.insertBooks(books);
+                for(Book book : books){
+                    if(mToken.isCancelled()
+                            || getRemainingBytes() - (getDownloadedBytes() - start) <= 0){
+                        break;
+                    }
+                    prefetchThumbnail(book.getThumbnailURL(thumbnailSize), thumbnailCache, mToken);
+                }
+                history.recordPrefetch(query);
+                prefetched++;
+            }
+            spend(getDownloadedBytes() - start);
+        }
+
+        mPrefs.edit()
+                .putInt(KEY_RUNS, mPrefs.getInt(KEY_RUNS, 0) + 1)
+                .putLong(KEY_LAST_RUN, System.currentTimeMillis())
+                .apply();
+        Log.i(LOG_TAG, "Prefetched " + prefetched + " of " + queries.size() + " queries, "
+                + getRemainingBytes() + " bytes of today's budget left");
+    }
+
+    /**
+     * Downloads the thumbnail into the disk cache on the image pool and waits for it
+     */
+    private static void prefetchThumbnail(final String url, final ThumbnailCache thumbnailCache,
+                                          final CancellationToken token){
+        try {
+            BookExecutors.image().submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return QueryUtils.prefetchThumbnail(url, thumbnailCache, token);
+                }
+            }, Priority.PREFETCH).get();
+        } catch (ExecutionException e){
+            Log.e(LOG_TAG, "Problem prefetching thumbnail " + url, e.getCause());
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the bytes of search responses and thumbnails downloaded by the app so far
+     */
+    private static long getDownloadedBytes(){
+        SearchMetrics metrics = SearchMetrics.getInstance();
+        return metrics.getSearchBytes() + metrics.getThumbnailBytes();
+    }
+
+    /**
+     * Returns the bytes left in today's budget
+     */
+    private long getRemainingBytes(){
+        long today = System.currentTimeMillis() / DAY;
+        if(mPrefs.getLong(KEY_BUDGET_DAY, -1) != today){
+            return DAILY_BYTE_BUDGET;
+        }
+        return DAILY_BYTE_BUDGET - mPrefs.getLong(KEY_BUDGET_BYTES, 0);
+    }
+
+    /**
+     * Takes the bytes from today's budget
+     */
+    private void spend(long bytes){
+        long today = System.currentTimeMillis() / DAY;
+        long spent = mPrefs.getLong(KEY_BUDGET_DAY, -1) == today
+                ? mPrefs.getLong(KEY_BUDGET_BYTES, 0) : 0;
+        mPrefs.edit()
+                .putLong(KEY_BUDGET_DAY, today)
+                .putLong(KEY_BUDGET_BYTES, spent + bytes)
+                .putLong(KEY_TOTAL_BYTES, mPrefs.getLong(KEY_TOTAL_BYTES, 0) + bytes)
+                .apply();
+    }
+
+    @Override
+    public String toString(){
+        QueryHistory history = QueryHistory.getInstance(mContext);
+        return "Prefetch{runs=" + mPrefs.getInt(KEY_RUNS, 0)
+                + ", lastRun=" + mPrefs.getLong(KEY_LAST_RUN, 0)
+                + ", bytesLeftToday=" + getRemainingBytes()
+                + ", totalBytes=" + mPrefs.getLong(KEY_TOTAL_BYTES, 0)
+                + ", prefetches=" + history.getPrefetchCount()
+                + ", used=" + history.getPrefetchUsedCount() + "}";
+    }
+}
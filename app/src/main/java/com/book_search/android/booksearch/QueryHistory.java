@@ -0,0 +1,204 @@
+package com.book_search.android.booksearch;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.book_search.core.QueryNormalizer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Persistent history of the queries the user searched for, by normalized query, and
+ * of the queries the background prefetch refreshed.
+ *
+ * Each query records how often and how recently it was searched, which picks what is
+ * prefetched. A search for a query whose prefetch is still fresh counts that prefetch
+ * as used, once, so the prefetch hit rate can be measured.
+ */
+
+public class QueryHistory extends SQLiteOpenHelper {
+    //Tag for log messages
+    private static final String LOG_TAG = QueryHistory.class.getSimpleName();
+
+    //Name and version of the database file
+    private static final String DATABASE_NAME = "query_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    //Most queries kept; the ones searched longest ago are evicted
+    private static final int MAX_QUERIES = 200;
+
+    //How long a prefetched page counts as fresh, in milliseconds
+    static final long PREFETCH_FRESHNESS = 24 * 60 * 60 * 1000L;
+
+    //Table of queries
+    private static final String TABLE_QUERIES = "queries";
+    private static final String COLUMN_QUERY = "query";
+    private static final String COLUMN_SEARCH_COUNT = "search_count";
+    private static final String COLUMN_LAST_SEARCHED = "last_searched";
+    private static final String COLUMN_PREFETCHED = "prefetched";
+    private static final String COLUMN_PREFETCH_COUNT = "prefetch_count";
+    private static final String COLUMN_PREFETCH_USED_COUNT = "prefetch_used_count";
+
+    //Single history instance shared by the whole app
+    private static QueryHistory sInstance;
+
+    /**
+     * Returns the history shared by the whole app
+     */
+    public static synchronized QueryHistory getInstance(Context context){
+        if(sInstance == null){
+            sInstance = new QueryHistory(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private QueryHistory(Context context){
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_QUERIES + " ("
+                + COLUMN_QUERY + " TEXT PRIMARY KEY, "
+                + COLUMN_SEARCH_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_LAST_SEARCHED + " INTEGER NOT NULL DEFAULT 0, "
+                //Time of the last prefetch not yet used by a search, or 0
+                + COLUMN_PREFETCHED + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_PREFETCH_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_PREFETCH_USED_COUNT + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_QUERIES);
+        onCreate(db);
+    }
+
+    /**
+     * Records that the user searched for the query.
+     * This is a blocking call and must not be made on the main thread.
+     */
+    public void recordSearch(String input){
+        String query = QueryNormalizer.normalize(input);
+        if(query.isEmpty()){
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                String[] args = new String[]{query};
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE_QUERIES + " (" + COLUMN_QUERY
+                        + ") VALUES (?)", args);
+                //A fresh prefetch is used by this search; an older one was wasted
+                db.execSQL("UPDATE " + TABLE_QUERIES + " SET "
+                        + COLUMN_PREFETCH_USED_COUNT + " = " + COLUMN_PREFETCH_USED_COUNT
+                        + " + 1 WHERE " + COLUMN_QUERY + " = ? AND " + COLUMN_PREFETCHED
+                        + " > " + (now - PREFETCH_FRESHNESS), args);
+                db.execSQL("UPDATE " + TABLE_QUERIES + " SET "
+                        + COLUMN_SEARCH_COUNT + " = " + COLUMN_SEARCH_COUNT + " + 1, "
+                        + COLUMN_LAST_SEARCHED + " = " + now + ", "
+                        + COLUMN_PREFETCHED + " = 0 WHERE " + COLUMN_QUERY + " = ?", args);
+                db.execSQL("DELETE FROM " + TABLE_QUERIES + " WHERE " + COLUMN_QUERY
+                        + " IN (SELECT " + COLUMN_QUERY + " FROM " + TABLE_QUERIES
+                        + " ORDER BY " + COLUMN_LAST_SEARCHED + " DESC LIMIT -1 OFFSET "
+                        + MAX_QUERIES + ")");
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (RuntimeException e){
+            Log.e(LOG_TAG, "Problem recording the search.", e);
+        }
+    }
+
+    /**
+     * Records that the query's first page was prefetched.
+     * This is a blocking call and must not be made on the main thread.
+     */
+    public void recordPrefetch(String query){
+        try {
+            getWritableDatabase().execSQL("UPDATE " + TABLE_QUERIES + " SET "
+                    + COLUMN_PREFETCHED + " = " + System.currentTimeMillis() + ", "
+                    + COLUMN_PREFETCH_COUNT + " = " + COLUMN_PREFETCH_COUNT + " + 1 WHERE "
+                    + COLUMN_QUERY + " = ?", new String[]{query});
+        } catch (RuntimeException e){
+            Log.e(LOG_TAG, "Problem recording the prefetch.", e);
+        }
+    }
+
+    /**
+     * Returns the queries worth prefetching: the most recently searched ones, then the
+     * most often searched ones, leaving out those already prefetched and still fresh.
+     * This is a blocking call and must not be made on the main thread.
+     * @param recent is the number of most recent queries
+     * @param frequent is the number of most frequent queries
+     */
+    public List<String> getPrefetchCandidates(int recent, int frequent){
+        Set<String> queries = new LinkedHashSet<>();
+        String stale = COLUMN_PREFETCHED + " <= "
+                + (System.currentTimeMillis() - PREFETCH_FRESHNESS);
+        queries.addAll(queryColumn(stale, COLUMN_LAST_SEARCHED + " DESC", recent));
+        queries.addAll(queryColumn(stale, COLUMN_SEARCH_COUNT + " DESC, "
+                + COLUMN_LAST_SEARCHED + " DESC", frequent));
+        return new ArrayList<>(queries);
+    }
+
+    private List<String> queryColumn(String selection, String orderBy, int limit){
+        List<String> queries = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().query(TABLE_QUERIES, new String[]{COLUMN_QUERY},
+                    selection, null, null, null, orderBy, String.valueOf(limit));
+            while(cursor.moveToNext()){
+                queries.add(cursor.getString(0));
+            }
+        } catch (RuntimeException e){
+            Log.e(LOG_TAG, "Problem reading the query history.", e);
+        } finally {
+            if(cursor != null){
+                cursor.close();
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Returns the number of prefetches made.
+     * This is a blocking call and must not be made on the main thread.
+     */
+    public long getPrefetchCount(){
+        return sum(COLUMN_PREFETCH_COUNT);
+    }
+
+    /**
+     * Returns the number of prefetches that a search used while they were fresh.
+     * This is a blocking call and must not be made on the main thread.
+     */
+    public long getPrefetchUsedCount(){
+        return sum(COLUMN_PREFETCH_USED_COUNT);
+    }
+
+    private long sum(String column){
+        Cursor cursor = null;
+        try {
+            cursor = getReadableDatabase().rawQuery("SELECT TOTAL(" + column + ") FROM "
+                    + TABLE_QUERIES, null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } catch (RuntimeException e){
+            Log.e(LOG_TAG, "Problem reading the query history.", e);
+            return 0;
+        } finally {
+            if(cursor != null){
+                cursor.close();
+            }
+        }
+    }
+}
@@ -1,33 +1,110 @@
 package com.book_search.android.booksearch;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.text.TextUtils;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.book_search.core.BookFetcher;
+import com.book_search.core.BookParser;
+import com.book_search.core.BookRecord;
+import com.book_search.core.BookSource;
+import com.book_search.core.CancellationToken;
+import com.book_search.core.CancelledException;
+import com.book_search.core.CircuitBreaker;
+import com.book_search.core.FederatedSearch;
+import com.book_search.core.GoogleBooksApi;
+import com.book_search.core.GoogleBooksSource;
+import com.book_search.core.HttpStatusException;
+import com.book_search.core.OpenLibrarySource;
+import com.book_search.core.PriorityExecutor.Priority;
+import com.book_search.core.QueryNormalizer;
+import com.book_search.core.RequestPolicy;
+import com.book_search.core.SearchMetrics;
+import com.book_search.core.VolumeParser;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Helper methods related to requesting and receiving book data from Google books
+ * Helper methods related to requesting and receiving book data from Google Books and
+ * Open Library
  */
 
 public class QueryUtils {
     /** Tag for the log messages */
     private static final String LOG_TAG = QueryUtils.class.getSimpleName();
 
+    /** How long a search waits for the network before serving a stale cached response */
+    private static final long STALE_WHILE_REVALIDATE_TIMEOUT = 2000;
+
+    /** How stale, in seconds, a cached response may be when the network is slow */
+    private static final int MAX_STALE_SECONDS = 24 * 60 * 60;
+
+    /** Searches that are in flight, so identical concurrent searches share one request */
+    private static final InFlightRequests<SearchResult> sInFlightSearches =
+            new InFlightRequests<>();
+
+    /** Thumbnail loads that are in flight, so identical concurrent loads share one download */
+    private static final InFlightRequests<byte[]> sInFlightThumbnails = new InFlightRequests<>();
+
+    /** Handler used to time how long an asynchronous search waits for the network */
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Pool the attempts of a search run on while hedging, separate from the API pool
+     *  because the searches running there wait for their attempts */
+    private static final ExecutorService sAttemptExecutor = Executors.newCachedThreadPool();
+
+    /** Retries failed searches up to twice and hedges attempts slower than the 95th percentile */
+    private static final RequestPolicy sSearchPolicy = new RequestPolicy(3, 250, 2000);
+    static {
+        sSearchPolicy.setHedging(0.95, 500);
+    }
+
+    /** Retries failed Open Library searches once. It is the secondary catalog, so it
+     *  is not hedged. */
+    private static final RequestPolicy sOpenLibraryPolicy = new RequestPolicy(2, 250, 1000);
+
+    /** How long a search waits for the slowest catalog before showing what it has */
+    private static final long FEDERATED_SEARCH_DEADLINE = 3000;
+
+    /** Pool every catalog is queried on, one thread per catalog and search */
+    private static final ExecutorService sSourceExecutor = Executors.newCachedThreadPool();
+
+    /** Searches Google Books and Open Library together, preferring Google's copy of a book */
+    private static final FederatedSearch sFederatedSearch = createFederatedSearch();
+
+    /** Consecutive failures after which a thumbnail host is left alone for a while */
+    private static final int THUMBNAIL_FAILURE_THRESHOLD = 5;
+
+    /** How long a failing thumbnail host is left alone, in milliseconds */
+    private static final long THUMBNAIL_BREAKER_OPEN_TIME = 30000;
+
+    /** A circuit breaker for every thumbnail host */
+    private static final ConcurrentMap<String, CircuitBreaker> sThumbnailBreakers =
+            new ConcurrentHashMap<>();
+
+    /** Number of searches answered from a stale cached response */
+    private static final AtomicInteger sStaleResponses = new AtomicInteger();
+
     /**
      * Create a private constructor because no one should create QueryUtils object.
      * This class is only meant to hold static variables and methods, which can be
@@ -37,29 +114,264 @@ public class QueryUtils {
     }
 
     /**
-     * Query Google maps and returns a list of Book objects
+     * Receives the books of a response while it is still being downloaded and parsed
+     */
+    public interface OnBooksParsedListener {
+        /**
+         * Called on a background thread each time another batch of books has been
+         * parsed, with every book parsed from the response so far
+         */
+        void onBooksParsed(List<Book> books);
+    }
+
+    /**
+     * Creates the federated search over every catalog, each with its own retry policy
      */
-    public static List<Book> fetchBookData(String requestURL){
-        //calls the createURL method to create a URL object
-        URL url = createURL(requestURL);
+    private static FederatedSearch createFederatedSearch(){
+        GoogleBooksSource google = new GoogleBooksSource(HttpClient.getInstance());
+        google.setRequestPolicy(sSearchPolicy, sAttemptExecutor);
+        OpenLibrarySource openLibrary = new OpenLibrarySource(HttpClient.getInstance());
+        openLibrary.setRequestPolicy(sOpenLibraryPolicy, sAttemptExecutor);
+        return new FederatedSearch(Arrays.<BookSource>asList(google, openLibrary),
+                sSourceExecutor, FEDERATED_SEARCH_DEADLINE);
+    }
+
+    /**
+     * Receives the page of books an asynchronous search found
+     */
+    public interface OnPageLoadedListener {
+        /**
+         * Called on a background thread with the merged page of books, or null if the
+         * search failed or there was nothing to search for
+         * @param complete is whether every catalog answered with fewer books than a
+         *                 page, so there are no more results. A stale page is never
+         *                 complete.
+         */
+        void onPageLoaded(List<Book> books, boolean complete);
+    }
+
+    /**
+     * Search every catalog for the user's input and return one page of books from
+     * each, merged and without duplicates.
+     *
+     * Google Books answers go through the HTTP response cache, but a stale copy is
+     * never returned: the call waits for the catalogs however long they take, so the
+     * page is always fresh. This is what the background prefetch needs before it stores
+     * the page; searches the user waits for use {@link #fetchBookDataAsync}, which
+     * serves a stale copy while the network is slow or failing.
+     *
+     * Concurrent calls for the same page share a single search, which runs with the
+     * most urgent priority any of them asked for, and stops, connections and all, once
+     * every one of them has cancelled.
+     * This is a blocking call and must not be made on the main thread.
+     * @param startIndex is the position of the first result of the page in each catalog
+     * @param maxResults is the number of results in the page of each catalog
+     * @param priority is the priority of the search on the API pool
+     * @param token stops the search when cancelled, after which null is returned
+     * @return the page, or null if the search failed or was cancelled
+     */
+    public static List<Book> fetchBookData(String input, int startIndex, int maxResults,
+                                           Priority priority, CancellationToken token){
+        //The same search typed differently is one search
+        String query = QueryNormalizer.normalize(input);
+        if(query.isEmpty()){
+            return null;
+        }
+        long start = System.nanoTime();
 
-        //Perform HTTP request to the URL and receive a JSON response
-        String jsonReponse = null;
+        //Search every catalog and merge the responses as they arrive
+        Future<SearchResult> networkResult = submitSearch(query, startIndex, maxResults,
+                priority, null, token);
+
+        List<Book> books = null;
         try{
-            //calls the makeHttpRequest method and returns a JSON string
-            jsonReponse = makeHttpRequest(url);
-        } catch (IOException e){
+            SearchResult result = networkResult.get();
+            books = result != null ? result.mBooks : null;
+        } catch (CancellationException e){
+            //Every caller of the search cancelled, so nobody wants the page
+            return null;
+        } catch (ExecutionException e){
             Log.e(LOG_TAG,"Problem making HTTP request: ", e);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
         }
-
-        //Calls extractFeatureFromJson method to extract relevant fields
-        //from the JSON response and create a list Book objects
-        List<Book> books = extractFeatureFromJson(jsonReponse);
+        if(token.isCancelled()){
+            return null;
+        }
+        SearchMetrics.getInstance().recordSince(SearchMetrics.Phase.SEARCH, start);
 
         //Return the list of Books
         return books;
     }
 
+    /**
+     * Search every catalog like {@link #fetchBookData}, without blocking: the page is
+     * handed to the listener on a background thread instead, and nothing waits for the
+     * network in the meantime. The books are also published to the parsed listener in
+     * small batches as they are parsed off the wire. Only the caller that starts a
+     * search receives its batches; callers that join a search already in flight get
+     * the complete page only.
+     *
+     * If the catalogs have not answered within {@link #STALE_WHILE_REVALIDATE_TIMEOUT},
+     * or the search fails, a stale cached copy of Google's page is handed over instead
+     * when there is one. The listener is called once either way.
+     * @param token stops the search when cancelled, after which the listener is not called
+     * @param parsedListener receives the books parsed so far, or null
+     * @param listener receives the page
+     */
+    public static void fetchBookDataAsync(String input, final int startIndex,
+                                          final int maxResults, final Priority priority,
+                                          final CancellationToken token,
+                                          OnBooksParsedListener parsedListener,
+                                          final OnPageLoadedListener listener){
+        final String query = QueryNormalizer.normalize(input);
+        if(query.isEmpty()){
+            listener.onPageLoaded(null, false);
+            return;
+        }
+        final long start = System.nanoTime();
+        final InFlightRequests.Request<SearchResult> networkResult = submitSearch(query,
+                startIndex, maxResults, priority, parsedListener, token);
+        final Executor api = BookExecutors.api().withPriority(priority);
+
+        //Whichever answers first, the network or the stale cache, is the page
+        final AtomicBoolean answered = new AtomicBoolean();
+        networkResult.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if(token.isCancelled() || answered.get()){
+                    return;
+                }
+                SearchResult result = null;
+                try {
+                    result = networkResult.get();
+                } catch (CancellationException e){
+                    //Every caller cancelled, this one included
+                    return;
+                } catch (ExecutionException e){
+                    Log.e(LOG_TAG,"Problem making HTTP request: ", e);
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                if(result != null){
+                    if(answered.compareAndSet(false, true)){
+                        SearchMetrics.getInstance().recordSince(
+                                SearchMetrics.Phase.SEARCH, start);
+                        listener.onPageLoaded(result.mBooks, result.mComplete);
+                    }
+                    return;
+                }
+
+                //The network failed, so a stale copy is better than no page at all
+                List<Book> books = readStalePageQuietly(query, startIndex, maxResults, token);
+                if(token.isCancelled() || !answered.compareAndSet(false, true)){
+                    return;
+                }
+                if(books != null){
+                    sStaleResponses.incrementAndGet();
+                }
+                SearchMetrics.getInstance().recordSince(SearchMetrics.Phase.SEARCH, start);
+                listener.onPageLoaded(books, false);
+            }
+        }, api);
+
+        //If the network is slow, serve a stale copy if there is one. Without one the
+        //page is whatever the network answers.
+        sMainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if(answered.get() || token.isCancelled()){
+                    return;
+                }
+                api.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        List<Book> books = readStalePageQuietly(query, startIndex,
+                                maxResults, token);
+                        if(books != null && !token.isCancelled()
+                                && answered.compareAndSet(false, true)){
+                            sStaleResponses.incrementAndGet();
+                            SearchMetrics.getInstance().recordSince(
+                                    SearchMetrics.Phase.SEARCH, start);
+                            listener.onPageLoaded(books, false);
+                        }
+                    }
+                });
+            }
+        }, STALE_WHILE_REVALIDATE_TIMEOUT);
+    }
+
+    /**
+     * Starts searching every catalog for the normalized query on the API pool, or joins
+     * the identical search in flight, moving it up to the given priority if it is
+     * still queued at a lower one
+     */
+    private static InFlightRequests.Request<SearchResult> submitSearch(
+            final String query, final int startIndex, final int maxResults, Priority priority,
+            final OnBooksParsedListener listener, CancellationToken caller){
+        String key = startIndex + "|" + maxResults + "|" + query;
+        InFlightRequests.Request<SearchResult> request = sInFlightSearches.submit(key,
+                new InFlightRequests.Work<SearchResult>() {
+                    @Override
+                    public SearchResult run(CancellationToken token) {
+                        return search(query, startIndex, maxResults, listener, token);
+                    }
+                }, BookExecutors.api().withPriority(priority), caller);
+        BookExecutors.api().raisePriority(request, priority);
+        return request;
+    }
+
+    /**
+     * Returns the number of searches answered from a stale cached response
+     */
+    public static int getStaleResponseCount(){
+        return sStaleResponses.get();
+    }
+
+    /**
+     * Returns the search over every catalog, for its statistics
+     */
+    static FederatedSearch getFederatedSearch(){
+        return sFederatedSearch;
+    }
+
+    /**
+     * Sets how long a search waits for the slowest catalog, in milliseconds
+     */
+    static void setSearchDeadline(long deadlineMillis){
+        sFederatedSearch.setDeadline(deadlineMillis);
+    }
+
+    /**
+     * Returns the circuit breaker of every thumbnail host, by host name
+     */
+    static Map<String, CircuitBreaker> getThumbnailBreakers(){
+        return Collections.unmodifiableMap(sThumbnailBreakers);
+    }
+
+    /**
+     * Returns the number of searches and thumbnail loads that joined an identical
+     * request already in flight instead of making their own
+     */
+    public static int getDeduplicatedCount(){
+        return sInFlightSearches.getDeduplicatedCount()
+                + sInFlightThumbnails.getDeduplicatedCount();
+    }
+
+    /**
+     * Returns the key used to recognize identical requests. The scheme and host are
+     * case insensitive, and an explicit default port is dropped.
+     */
+    private static String canonicalKey(URL url){
+        StringBuilder key = new StringBuilder();
+        key.append(url.getProtocol().toLowerCase(Locale.ROOT)).append("://")
+                .append(url.getHost().toLowerCase(Locale.ROOT));
+        if(url.getPort() != -1 && url.getPort() != url.getDefaultPort()){
+            key.append(':').append(url.getPort());
+        }
+        return key.append(url.getFile()).toString();
+    }
+
     /**
      * Returns a new URL object from the given string URL.
      */
@@ -74,193 +386,276 @@ public class QueryUtils {
     }
 
     /**
-     * Make an HTTP request to the given URL and return a String
+     * Search every catalog and return the merged books, or null if no catalog answered.
+     * The merge runs on the catalogs' threads, never on the main thread.
      */
-    private static String makeHttpRequest(URL url) throws IOException{
-        String jsonResponse = "";
-
-        //If the URL is null, then return early
-        if(url == null){
-            return jsonResponse;
-        }
-
-        HttpURLConnection urlConnection = null;
-        InputStream inputStream =null;
+    private static SearchResult search(String query, int startIndex, int maxResults,
+                                       OnBooksParsedListener listener, CancellationToken token){
+        BookConverter converter = new BookConverter(listener);
         try{
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setReadTimeout(10000 /* milliseconds*/);
-            urlConnection.setConnectTimeout(15000 /* milliseconds */);
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            //If the request was successful (response code 200)
-            //then read the input stream and parse the reponse
-            if(urlConnection.getResponseCode() == 200){
-                inputStream = urlConnection.getInputStream();
-                jsonResponse = readFromStream(inputStream);
-            } else {
-                Log.e(LOG_TAG, "Error response code: " + urlConnection.getResponseCode());
-            }
+            //Each catalog retries its own failures, and a slow or failing catalog only
+            //costs its own results
+            FederatedSearch.Page page = sFederatedSearch.searchPage(query, startIndex,
+                    maxResults, listener != null ? converter : null, token);
+            return new SearchResult(converter.convert(page.getBooks()), page.isComplete());
+        } catch (CancelledException e){
+            //Nobody is waiting for the result any more
+            return null;
         } catch (IOException e){
             Log.e(LOG_TAG, "Problem retrieving the book JSON results.", e);
-        } finally {
-            if(urlConnection != null){
-                urlConnection.disconnect();
-            }
-            if(inputStream != null){
-                // Closing the input stream could throw an IOException, which is why
-                // the makeHttpRequest(URL url) method signature specifies that an IOException
-                // could be thrown.
-                inputStream.close();
-            }
+            return null;
+        }
+    }
+
+    /**
+     * Return the books from the stale cached page like {@link #readStalePage}, or null
+     * if nothing usable is cached, the cache could not be read or the token was
+     * cancelled
+     */
+    private static List<Book> readStalePageQuietly(String query, int startIndex,
+                                                   int maxResults, CancellationToken token){
+        try {
+            return readStalePage(query, startIndex, maxResults, token);
+        } catch (CancelledException e){
+            return null;
+        } catch (IOException e){
+            Log.e(LOG_TAG, "Problem reading the cached response.", e);
+            return null;
         }
-        return jsonResponse;
     }
 
     /**
-     * Make an HTTP request to the thumbnail URL and return a BitMap as the response
+     * Return the books from the cached Google Books response for the page, even if it
+     * is stale, without touching the network. Returns null if nothing usable is cached.
      */
-    private static Bitmap getThumbnailImage(String url) throws IOException{
-        Bitmap bitMap = null;
+    private static List<Book> readStalePage(String query, int startIndex, int maxResults,
+                                            CancellationToken token) throws IOException{
+        URL url = new URL(GoogleBooksApi.pageUrl(GoogleBooksApi.buildSearchUrl(query),
+                startIndex, maxResults));
+        try {
+            List<BookRecord> records = BookFetcher.fetchBooks(HttpClient.getInstance(), url,
+                    true, "only-if-cached, max-stale=" + MAX_STALE_SECONDS,
+                    VolumeParser.INSTANCE, null, token);
+            return new BookConverter(null).convert(records);
+        } catch (HttpStatusException e){
+            //The cache answers 504 when it has no usable copy
+            return null;
+        }
+    }
 
+    /**
+     * Return the encoded thumbnail for the given URL from the disk cache, or make an
+     * HTTP request to the thumbnail URL when it is not cached, or null if neither has it.
+     * Concurrent loads of the same thumbnail share one read or download, which stops
+     * once every one of them has cancelled.
+     * This is a blocking call and must not be made on the main thread.
+     * @param token stops the load when cancelled, after which null is returned
+     */
+    static byte[] getThumbnailBytes(final String url, final ThumbnailCache thumbnailCache,
+                                    CancellationToken token){
         //If the URL is null, then return early.
         if(url == null){
-            return bitMap;
+            return null;
         }
 
+        //If the same thumbnail is already being loaded, wait for it instead of
+        //reading or downloading it a second time
+        URL key = createURL(url);
         try {
-            InputStream in = new java.net.URL(url).openStream();
-            bitMap = BitmapFactory.decodeStream(in);
-        } catch (Exception e) {
-            Log.e("Error", e.getMessage());
+            byte[] imageBytes = sInFlightThumbnails.execute(key != null ? canonicalKey(key) : url,
+                    new InFlightRequests.Work<byte[]>() {
+                        @Override
+                        public byte[] run(CancellationToken token) {
+                            return loadThumbnailBytes(url, thumbnailCache, token);
+                        }
+                    }, token);
+            return token.isCancelled() ? null : imageBytes;
+        } catch (CancellationException e){
+            //Every load of the thumbnail cancelled, this one included
+        } catch (ExecutionException e){
+            Log.e(LOG_TAG, "Problem getting thumbnail image. ", e.getCause());
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * Decode the thumbnail for a view that is targetSize pixels wide and high and add
+     * it to the memory cache, unless another load already has. The bitmap is acquired
+     * for display and must be released with {@link ThumbnailCache#releaseBitmap}.
+     * This is CPU-bound and must not be made on the main thread.
+     * @param token stops the decode when cancelled, after which null may be returned
+     */
+    static Bitmap decodeThumbnail(String url, byte[] imageBytes, int targetSize,
+                                  ThumbnailCache thumbnailCache, CancellationToken token){
+        Bitmap bitMap = thumbnailCache.acquireBitmap(url);
+        if(bitMap != null){
+            return bitMap;
         }
+        long start = System.nanoTime();
+        bitMap = ThumbnailDecoder.decode(imageBytes, targetSize, thumbnailCache.getBitmapPool(),
+                token);
+        if(bitMap == null){
+            return null;
+        }
+        SearchMetrics.getInstance().recordSince(SearchMetrics.Phase.THUMBNAIL_DECODE, start);
+        thumbnailCache.putAndAcquireBitmap(url, bitMap);
         return bitMap;
+    }
 
+    /**
+     * Download the thumbnail into the disk cache, without decoding it, unless it is
+     * already there. Returns whether it was downloaded.
+     * This is a blocking call and must not be made on the main thread.
+     */
+    static boolean prefetchThumbnail(String url, ThumbnailCache thumbnailCache,
+                                     CancellationToken token){
+        if(url == null || thumbnailCache.containsBytes(url)){
+            return false;
+        }
+        byte[] imageBytes = downloadThumbnail(url, token);
+        if(imageBytes == null){
+            return false;
+        }
+        thumbnailCache.putBytes(url, imageBytes);
+        return true;
     }
 
     /**
-     * Convert the InputStream into a String which contains the whole JSON response
-     * from the server
+     * Return the encoded thumbnail for the given URL from the disk cache, or from the
+     * network when it is not cached
      */
-    private static String readFromStream(InputStream inputStream) throws IOException{
-        StringBuilder output = new StringBuilder();
-        if(inputStream != null){
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
-            BufferedReader reader = new BufferedReader(inputStreamReader);
-            String line = reader.readLine();
-            while(line != null){
-                output.append(line);
-                line = reader.readLine();
+    private static byte[] loadThumbnailBytes(String url, ThumbnailCache thumbnailCache,
+                                             CancellationToken token){
+        byte[] imageBytes = thumbnailCache.getBytes(url);
+        if(imageBytes == null){
+            imageBytes = downloadThumbnail(url, token);
+            if(imageBytes != null){
+                thumbnailCache.putBytes(url, imageBytes);
             }
         }
-        return output.toString();
+        return imageBytes;
     }
 
     /**
-     * Return a list of Book objects that has been built up from parsing the given
-     * JSON response
+     * Make an HTTP request to the thumbnail URL and return the encoded image bytes
      */
-    private static List<Book> extractFeatureFromJson(String bookJSON){
-        //If the JSON string is empty or null, then return early
-        if(TextUtils.isEmpty(bookJSON)){
+    private static byte[] downloadThumbnail(String url, CancellationToken token){
+        URL thumbnailURL = createURL(url);
+        if(thumbnailURL == null){
             return null;
         }
 
-        //Create an empty ArrayList that we can add books to
-        List<Book> books = new ArrayList<>();
+        //Don't keep waiting on a host that has been failing
+        CircuitBreaker breaker = getThumbnailBreaker(thumbnailURL.getHost());
+        if(!breaker.allowRequest()){
+            return null;
+        }
+        try {
+            //Thumbnails have their own cache, so keep them out of the HTTP response cache
+            byte[] imageBytes = BookFetcher.fetchBytes(HttpClient.getInstance(), thumbnailURL,
+                    false, token);
+            breaker.recordSuccess();
+            return imageBytes;
+        } catch (CancelledException e) {
+            //Nobody wants the thumbnail any more, which says nothing about the host
+            breaker.recordCancelled();
+            return null;
+        } catch (HttpStatusException e) {
+            //The host answered, so only its server errors count against it
+            if(e.isTransient()){
+                breaker.recordFailure();
+            } else {
+                breaker.recordSuccess();
+            }
+            Log.e(LOG_TAG, "Problem getting thumbnail image. ", e);
+            return null;
+        } catch (IOException e) {
+            breaker.recordFailure();
+            Log.e(LOG_TAG, "Problem getting thumbnail image. ", e);
+            return null;
+        }
+    }
 
-        //Try to parse the JSON reponse String. If there's a problem with the way
-        // th JSON is formatted, a JSONException exception object will be thrown.
-        //Cath the exception so the app doesn't crash, and log the error
-        try{
-            //Create a JSONObject from the JSON reponse string
-            JSONObject baseJsonResponse = new JSONObject(bookJSON);
-
-            //Extract the JSONArray associated with the key called "items",
-            //which represents a list of items (or books).
-            JSONArray bookArray = baseJsonResponse.getJSONArray("items");
-
-            //For each book in the bookArray, create a Book object
-            for(int i = 0; i < bookArray.length(); i++){
-                //Get a single book at position i within the list of book items
-                JSONObject currentBook = bookArray.getJSONObject(i);
-
-                //Create a JSONArray that will hold an array of authors for the book
-                JSONArray  authorArray;
-
-                //Create a String to hold authors
-                String author = "";
-
-                //Get the value for the key "volumeInfo"
-                JSONObject volumeInfo = currentBook.getJSONObject("volumeInfo");
-                //Extract the value for the key called "authors"
-                if(volumeInfo.has("authors")){
-                    authorArray = volumeInfo.getJSONArray("authors");
-                    //Extract the values from the "authors' array
-                    for(int j = 0; j < authorArray.length(); j ++){
-                        author += authorArray.getString(j) + "\n";
-                    }
-                } else {
-                    author = " ";
-                }
+    /**
+     * Returns the circuit breaker for the thumbnail host, creating it if needed
+     */
+    private static CircuitBreaker getThumbnailBreaker(String host){
+        String key = host.toLowerCase(Locale.ROOT);
+        CircuitBreaker breaker = sThumbnailBreakers.get(key);
+        if(breaker == null){
+            CircuitBreaker created = new CircuitBreaker(THUMBNAIL_FAILURE_THRESHOLD,
+                    THUMBNAIL_BREAKER_OPEN_TIME);
+            breaker = sThumbnailBreakers.putIfAbsent(key, created);
+            if(breaker == null){
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
 
-                //Extract the value for the key called "title" from the JSONObject volumeInfo
-                String title = volumeInfo.getString("title");
+    /**
+     * Returns the book to show for a record parsed from a response
+     */
+    private static Book toBook(BookRecord record){
+        return new Book(record.getTitle(), record.getAuthors(), record.getPublishedDate(),
+                record.getThumbnailUrl(), record.getSmallThumbnailUrl(), record.getRating(),
+                record.getInfoLink());
+    }
 
-                //Extract the value from the key called "published date"
-                String publishedDate;
+    /**
+     * The merged books of a search, and whether the catalogs have no more
+     */
+    private static final class SearchResult {
+        final List<Book> mBooks;
+        final boolean mComplete;
 
-                if(volumeInfo.has("publishedDate")){
-                    publishedDate = volumeInfo.getString("publishedDate");
-                } else {
-                    publishedDate = "";
-                }
+        SearchResult(List<Book> books, boolean complete){
+            mBooks = books;
+            mComplete = complete;
+        }
+    }
 
-                String rating;
-                if(volumeInfo.has("averageRating")){
-                    //Extract the value from the key called "averageRating"
-                    rating = volumeInfo.getString("averageRating");
-                } else{
-                    rating = "N/A";
-                }
+    /**
+     * Turns the records of a search into books as they are parsed. Every record is
+     * converted only once, however many progress updates it is part of. Records are
+     * matched by identity because a merged list is not append-only: books from a
+     * later catalog move down when an earlier one answers.
+     */
+    private static class BookConverter implements BookParser.Listener {
+        //Listener for the books parsed so far, or null
+        private final OnBooksParsedListener mListener;
 
-                //For a given book, extract the JSONObject associated with
-                //the key called "imageLinks", which represents a list of all
-                //thumbnail links for the book
-                JSONObject imageLinks; 
-                Bitmap thumbnail = null;
-
-                if(volumeInfo.has("imageLinks")){
-                    imageLinks = volumeInfo.getJSONObject("imageLinks");
-                    //Extract the  value for the key called "thumbnail"
-                    String thumbnailString = imageLinks.getString("thumbnail");
-                    //Get the image from the "thumbnail" url by calling the getThumbnailImage() method.
-                    try {
-                        thumbnail = getThumbnailImage(thumbnailString);
-                    }catch (IOException e){
-                        Log.e(LOG_TAG, "Problem getting thumbnail image. ", e);
+        //Books converted so far, by the record they were converted from
+        private final Map<BookRecord, Book> mBooks = new IdentityHashMap<>();
 
-                    }
-                }
-                //Extract the  value for the key called "infoLink"
-                String webUrl = volumeInfo.getString("infoLink");
+        BookConverter(OnBooksParsedListener listener){
+            mListener = listener;
+        }
 
-                //Create a new Book object with the tite, author, published date,
-                //rating, thumbnailURL, and websiteURL
-                Book book = new Book(title, author, publishedDate, thumbnail,
-                        rating, webUrl);
+        @Override
+        public void onBooksParsed(List<BookRecord> records) {
+            List<Book> books = convert(records);
+            if(mListener != null){
+                mListener.onBooksParsed(books);
+            }
+        }
 
-                //Add the new Book object to the list of books
+        /**
+         * Returns the book for every record, converting those not seen before
+         */
+        synchronized List<Book> convert(List<BookRecord> records){
+            List<Book> books = new ArrayList<>(records.size());
+            for(BookRecord record : records){
+                Book book = mBooks.get(record);
+                if(book == null){
+                    book = toBook(record);
+                    mBooks.put(record, book);
+                }
                 books.add(book);
             }
-
-        }catch (JSONException e){
-            // If an error is thrown when executing any of the above statements in the "try" block,
-            // catch the exception here, so the app doesn't crash. Print a log message
-            // with the message from the exception.
-            Log.e("QueryUtils", "Problem parsing the Book JSON results", e);
+            return books;
         }
-        //Return the list of books
-        return books;
     }
 }
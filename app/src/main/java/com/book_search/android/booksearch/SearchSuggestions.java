@@ -0,0 +1,108 @@
+package com.book_search.android.booksearch;
+
+import com.book_search.core.PrefixResultCache;
+import com.book_search.core.PrefixTrie;
+import com.book_search.core.QueryNormalizer;
+
+import java.util.List;
+
+/**
+ * Remembers what has been searched and found during this run of the app, so the
+ * search box can suggest completions and answer narrowed queries without the network.
+ *
+ * Past queries and the titles of fetched books go into a trie of completions, with
+ * queries weighted above titles. Live results are kept by normalized query, so a
+ * query that adds words to one already searched is answered from its results.
+ */
+
+final class SearchSuggestions {
+
+    //Most completions the trie holds
+    private static final int MAX_TERMS = 2000;
+
+    //Weight a search adds to its query, above the weight a fetched title gets
+    private static final int QUERY_WEIGHT = 5;
+    private static final int TITLE_WEIGHT = 1;
+
+    //Most queries whose live results are kept
+    private static final int MAX_CACHED_QUERIES = 32;
+
+    //Keeps the books whose title or authors have a word starting with every term
+    private static final PrefixResultCache.Matcher<Book> BOOK_MATCHER =
+            new PrefixResultCache.Matcher<Book>() {
+                @Override
+                public boolean matches(Book book, List<String> terms) {
+                    return QueryNormalizer.matchesTermPrefixes(
+                            QueryNormalizer.normalize(book.getTitle() + " " + book.getAuthor()),
+                            terms);
+                }
+            };
+
+    //The single instance shared by every activity
+    private static SearchSuggestions sInstance;
+
+    //Completions from past queries and fetched titles
+    private final PrefixTrie mTrie = new PrefixTrie(MAX_TERMS);
+
+    //Live results by normalized query
+    private final PrefixResultCache<Book> mResults =
+            new PrefixResultCache<>(MAX_CACHED_QUERIES, BOOK_MATCHER);
+
+    private SearchSuggestions(){
+    }
+
+    /**
+     * Returns the shared SearchSuggestions
+     */
+    static synchronized SearchSuggestions getInstance(){
+        if(sInstance == null){
+            sInstance = new SearchSuggestions();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Remembers a query the user searched for
+     */
+    void addQuery(String query){
+        mTrie.add(query, QUERY_WEIGHT);
+    }
+
+    /**
+     * Remembers the titles of fetched books as completions
+     */
+    void addTitles(List<Book> books){
+        for(Book book : books){
+            mTrie.add(book.getTitle(), TITLE_WEIGHT);
+        }
+    }
+
+    /**
+     * Remembers the live results of a query, and their titles as completions
+     * @param complete is whether these are all the results the catalogs have
+     */
+    void addResults(String query, List<Book> books, boolean complete){
+        mResults.put(query, books, complete);
+        addTitles(books);
+    }
+
+    /**
+     * Returns up to limit completions of the prefix, most used first
+     */
+    List<String> suggest(String prefix, int limit){
+        return mTrie.suggest(prefix, limit);
+    }
+
+    /**
+     * Returns the live results of the query, narrowed from a shorter query if needed,
+     * or null if nothing is cached for it
+     */
+    PrefixResultCache.Hit<Book> getCachedResults(String query){
+        return mResults.get(query);
+    }
+
+    @Override
+    public String toString(){
+        return "SearchSuggestions{completions=" + mTrie.size() + ", results=" + mResults + "}";
+    }
+}
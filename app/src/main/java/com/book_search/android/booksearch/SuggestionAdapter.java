@@ -0,0 +1,88 @@
+package com.book_search.android.booksearch;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shows completions of the search box's text from {@link SearchSuggestions}. The trie
+ * is searched on the filter's background thread, never on the main thread.
+ */
+
+class SuggestionAdapter extends BaseAdapter implements Filterable {
+
+    //Most completions shown at once
+    private static final int MAX_SUGGESTIONS = 5;
+
+    //Inflates the rows
+    private final LayoutInflater mInflater;
+
+    //Completions currently shown
+    private List<String> mSuggestions = Collections.emptyList();
+
+    SuggestionAdapter(Context context){
+        mInflater = LayoutInflater.from(context);
+    }
+
+    @Override
+    public int getCount(){
+        return mSuggestions.size();
+    }
+
+    @Override
+    public String getItem(int position){
+        return mSuggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position){
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent){
+        TextView view = (TextView) convertView;
+        if(view == null){
+            view = (TextView) mInflater.inflate(android.R.layout.simple_dropdown_item_1line,
+                    parent, false);
+        }
+        view.setText(getItem(position));
+        return view;
+    }
+
+    @Override
+    public Filter getFilter(){
+        return new Filter() {
+            @Override
+            protected FilterResults performFiltering(CharSequence constraint) {
+                FilterResults results = new FilterResults();
+                List<String> suggestions = constraint == null
+                        ? Collections.<String>emptyList()
+                        : SearchSuggestions.getInstance().suggest(constraint.toString(),
+                                MAX_SUGGESTIONS);
+                results.values = suggestions;
+                results.count = suggestions.size();
+                return results;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            protected void publishResults(CharSequence constraint, FilterResults results) {
+                mSuggestions = (List<String>) results.values;
+                if(results.count > 0){
+                    notifyDataSetChanged();
+                } else {
+                    notifyDataSetInvalidated();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,403 @@
+package com.book_search.android.booksearch;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Two level cache for book thumbnails, keyed by the thumbnail URL.
+ *
+ * The first level keeps decoded bitmaps in memory and is bounded by the number of
+ * bytes the bitmaps use. The second level keeps the encoded image bytes on disk and
+ * is bounded by the total file size. Both levels evict the least recently used entry.
+ *
+ * Bitmaps evicted from memory go to a {@link BitmapPool} so their memory can be decoded
+ * into again. Bitmaps that are still on screen are only pooled once every ImageView
+ * showing them has released them. A bitmap is acquired for display under the same
+ * lock eviction takes, so it can't be pooled between leaving the cache and being shown.
+ */
+
+public class ThumbnailCache {
+    //Tag for log messages
+    private static final String LOG_TAG = ThumbnailCache.class.getSimpleName();
+
+    //Name of the directory, inside the app's cache directory, that holds the thumbnails
+    private static final String DISK_CACHE_DIR = "thumbnails";
+
+    //Maximum size of the disk cache in bytes
+    private static final long DISK_CACHE_SIZE = 10 * 1024 * 1024;
+
+    //Fraction of the heap the memory cache may use
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    //Fraction of the heap the bitmap pool may use
+    private static final int BITMAP_POOL_DIVISOR = 32;
+
+    //Single cache instance shared by every search
+    private static ThumbnailCache sInstance;
+
+    //Decoded bitmaps, sized by their byte count
+    private final LruCache<String, Bitmap> mMemoryCache;
+
+    //Bitmaps that can be decoded into again
+    private final BitmapPool mBitmapPool;
+
+    //Number of ImageViews showing each bitmap
+    private final IdentityHashMap<Bitmap, Integer> mDisplayCounts = new IdentityHashMap<>();
+
+    //Bitmaps evicted from memory while they were still on screen
+    private final IdentityHashMap<Bitmap, Boolean> mEvictedWhileDisplayed =
+            new IdentityHashMap<>();
+
+    //Directory that holds the encoded thumbnails
+    private final File mDiskCacheDir;
+
+    //Size of every file in the disk cache, in access order (eldest first)
+    private final LinkedHashMap<String, Long> mDiskEntries =
+            new LinkedHashMap<>(32, 0.75f, true);
+
+    //Total size of the files in the disk cache
+    private long mDiskCacheSize;
+
+    //Hit and miss counters
+    private final AtomicInteger mMemoryHits = new AtomicInteger();
+    private final AtomicInteger mDiskHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    /**
+     * Returns the cache shared by the whole app
+     */
+    public static synchronized ThumbnailCache getInstance(Context context){
+        if(sInstance == null){
+            sInstance = new ThumbnailCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ThumbnailCache(Context context){
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        mBitmapPool = new BitmapPool((int) (maxMemory / BITMAP_POOL_DIVISOR));
+        mMemoryCache = new LruCache<String, Bitmap>((int) (maxMemory / MEMORY_CACHE_DIVISOR)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                if(oldValue != newValue){
+                    recycleWhenReleased(oldValue);
+                }
+            }
+        };
+
+        mDiskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        if(!mDiskCacheDir.isDirectory() && !mDiskCacheDir.mkdirs()){
+            Log.e(LOG_TAG, "Unable to create the thumbnail cache directory.");
+        }
+        loadDiskEntries();
+    }
+
+    /**
+     * Returns the decoded thumbnail for the URL from memory, or null if it is not cached
+     */
+    public Bitmap getBitmap(String url){
+        Bitmap bitmap = mMemoryCache.get(url);
+        if(bitmap != null){
+            mMemoryHits.incrementAndGet();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the decoded thumbnail for the URL from memory, or null if it is not
+     * cached, and records that it is about to be displayed. Every bitmap acquired must
+     * be released with {@link #releaseBitmap} once it is no longer shown.
+     */
+    public synchronized Bitmap acquireBitmap(String url){
+        //Eviction hands bitmaps to the pool under this lock, so a bitmap found here
+        //is retained before it can be pooled
+        Bitmap bitmap = getBitmap(url);
+        if(bitmap != null){
+            retainBitmap(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a decoded thumbnail to the memory cache and records that it is about to be
+     * displayed, like {@link #acquireBitmap}
+     */
+    public synchronized void putAndAcquireBitmap(String url, Bitmap bitmap){
+        retainBitmap(bitmap);
+        mMemoryCache.put(url, bitmap);
+    }
+
+    /**
+     * Returns the pool evicted bitmaps are put into
+     */
+    public BitmapPool getBitmapPool(){
+        return mBitmapPool;
+    }
+
+    /**
+     * Records that an ImageView started showing the bitmap
+     */
+    private synchronized void retainBitmap(Bitmap bitmap){
+        Integer count = mDisplayCounts.get(bitmap);
+        mDisplayCounts.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Records that a bitmap acquired for display is no longer shown. If the bitmap
+     * has already left the memory cache it is handed to the pool.
+     */
+    public synchronized void releaseBitmap(Bitmap bitmap){
+        Integer count = mDisplayCounts.get(bitmap);
+        if(count == null){
+            return;
+        }
+        if(count > 1){
+            mDisplayCounts.put(bitmap, count - 1);
+            return;
+        }
+        mDisplayCounts.remove(bitmap);
+        if(mEvictedWhileDisplayed.remove(bitmap) != null){
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Hands a bitmap that left the memory cache to the pool, or defers that until
+     * no ImageView shows it anymore
+     */
+    private synchronized void recycleWhenReleased(Bitmap bitmap){
+        if(mDisplayCounts.containsKey(bitmap)){
+            mEvictedWhileDisplayed.put(bitmap, Boolean.TRUE);
+        } else {
+            mBitmapPool.put(bitmap);
+        }
+    }
+
+    /**
+     * Returns the encoded thumbnail for the URL from disk, or null if it is not cached
+     */
+    public byte[] getBytes(String url){
+        String fileName = fileNameFor(url);
+        synchronized (this){
+            if(mDiskEntries.get(fileName) == null){
+                mMisses.incrementAndGet();
+                return null;
+            }
+        }
+
+        File file = new File(mDiskCacheDir, fileName);
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            while(offset < bytes.length){
+                int read = inputStream.read(bytes, offset, bytes.length - offset);
+                if(read < 0){
+                    throw new IOException("Unexpected end of cached thumbnail");
+                }
+                offset += read;
+            }
+            //Keep the file's age in step with the access order for the next launch
+            file.setLastModified(System.currentTimeMillis());
+            mDiskHits.incrementAndGet();
+            return bytes;
+        } catch (IOException e){
+            Log.e(LOG_TAG, "Problem reading cached thumbnail.", e);
+            removeFile(fileName);
+            mMisses.incrementAndGet();
+            return null;
+        } finally {
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Returns whether the encoded thumbnail for the URL is on disk, without reading it
+     */
+    public synchronized boolean containsBytes(String url){
+        return mDiskEntries.containsKey(fileNameFor(url));
+    }
+
+    /**
+     * Stores the encoded thumbnail on disk, evicting the least recently used
+     * thumbnails if the disk cache grows over its size limit
+     */
+    public void putBytes(String url, byte[] bytes){
+        if(url == null || bytes == null){
+            return;
+        }
+        String fileName = fileNameFor(url);
+        File tempFile = new File(mDiskCacheDir, fileName + ".tmp");
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            outputStream.write(bytes);
+        } catch (IOException e){
+            Log.e(LOG_TAG, "Problem writing cached thumbnail.", e);
+            tempFile.delete();
+            return;
+        } finally {
+            closeQuietly(outputStream);
+        }
+
+        synchronized (this){
+            if(!tempFile.renameTo(new File(mDiskCacheDir, fileName))){
+                tempFile.delete();
+                return;
+            }
+            Long previousSize = mDiskEntries.put(fileName, (long) bytes.length);
+            if(previousSize != null){
+                mDiskCacheSize -= previousSize;
+            }
+            mDiskCacheSize += bytes.length;
+            trimDiskCache();
+        }
+    }
+
+    /**
+     * Shrinks the memory cache in response to {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public void trimMemory(int level){
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE){
+            mMemoryCache.evictAll();
+            mBitmapPool.clear();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL){
+            //Drop the least recently used half. LruCache.trimToSize() is not public
+            //on every supported API level, so walk the access-ordered snapshot instead.
+            int targetSize = mMemoryCache.size() / 2;
+            for(String url : mMemoryCache.snapshot().keySet()){
+                if(mMemoryCache.size() <= targetSize){
+                    break;
+                }
+                mMemoryCache.remove(url);
+            }
+            mBitmapPool.clear();
+        }
+    }
+
+    /**
+     * Returns the number of lookups served from memory
+     */
+    public int getMemoryHitCount(){
+        return mMemoryHits.get();
+    }
+
+    /**
+     * Returns the number of lookups served from disk
+     */
+    public int getDiskHitCount(){
+        return mDiskHits.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to go to the network
+     */
+    public int getMissCount(){
+        return mMisses.get();
+    }
+
+    /**
+     * Builds the index of the disk cache from the files left by a previous run,
+     * oldest file first
+     */
+    private synchronized void loadDiskEntries(){
+        File[] files = mDiskCacheDir.listFiles();
+        if(files == null){
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long difference = first.lastModified() - second.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for(File file : files){
+            if(file.getName().endsWith(".tmp")){
+                file.delete();
+                continue;
+            }
+            mDiskEntries.put(file.getName(), file.length());
+            mDiskCacheSize += file.length();
+        }
+        trimDiskCache();
+    }
+
+    /**
+     * Deletes the least recently used files until the disk cache fits its size limit
+     */
+    private synchronized void trimDiskCache(){
+        Iterator<Map.Entry<String, Long>> iterator = mDiskEntries.entrySet().iterator();
+        while(mDiskCacheSize > DISK_CACHE_SIZE && iterator.hasNext()){
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(mDiskCacheDir, eldest.getKey()).delete();
+            mDiskCacheSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private synchronized void removeFile(String fileName){
+        Long size = mDiskEntries.remove(fileName);
+        if(size != null){
+            mDiskCacheSize -= size;
+        }
+        new File(mDiskCacheDir, fileName).delete();
+    }
+
+    /**
+     * Returns a file name that is safe to use on disk for the given URL
+     */
+    private static String fileNameFor(String url){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder fileName = new StringBuilder(hash.length * 2);
+            for(byte b : hash){
+                fileName.append(Character.forDigit((b >> 4) & 0xf, 16));
+                fileName.append(Character.forDigit(b & 0xf, 16));
+            }
+            return fileName.toString();
+        } catch (NoSuchAlgorithmException | IOException e){
+            return String.valueOf(url.hashCode());
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable){
+        if(closeable != null){
+            try {
+                closeable.close();
+            } catch (IOException e){
+                Log.e(LOG_TAG, "Problem closing thumbnail file.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.book_search.android.booksearch;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import com.book_search.core.CancellationToken;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes thumbnails at the size they are displayed at, reusing bitmaps from a
+ * {@link BitmapPool} where possible.
+ */
+
+public final class ThumbnailDecoder {
+    //Tag for log messages
+    private static final String LOG_TAG = ThumbnailDecoder.class.getSimpleName();
+
+    //Bytes of new bitmap memory allocated by decoding
+    private static final AtomicLong sAllocatedBytes = new AtomicLong();
+
+    //Bytes of bitmap memory that decoding reused from the pool
+    private static final AtomicLong sReusedBytes = new AtomicLong();
+
+    private ThumbnailDecoder(){
+    }
+
+    /**
+     * Decodes the encoded image so that it is no smaller than targetSize pixels in
+     * either dimension, decoding into a pooled bitmap when one fits.
+     * Returns null if the image could not be decoded, or if the token was cancelled
+     * first. Cancelling also stops a decode in progress before Nougat; later versions
+     * finish it.
+     */
+    public static Bitmap decode(byte[] imageBytes, int targetSize, BitmapPool pool,
+                                CancellationToken token){
+        if(token.isCancelled()){
+            return null;
+        }
+
+        //First pass: only read the bounds of the image
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length, options);
+        if(options.outWidth <= 0 || options.outHeight <= 0){
+            return null;
+        }
+
+        //Second pass: decode at the sample size that matches the view
+        int sampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetSize);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+        //Before KitKat a bitmap can only be reused when the image is not sampled down
+        if(sampleSize == 1 || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT){
+            int width = (options.outWidth + sampleSize - 1) / sampleSize;
+            int height = (options.outHeight + sampleSize - 1) / sampleSize;
+            options.inBitmap = pool.get(width, height, options.inPreferredConfig);
+        }
+
+        final BitmapFactory.Options decodeOptions = options;
+        Runnable stopDecode = new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                decodeOptions.requestCancelDecode();
+            }
+        };
+        token.addListener(stopDecode);
+        Bitmap bitmap;
+        try {
+            try {
+                bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length, options);
+            } catch (IllegalArgumentException e){
+                //The pooled bitmap did not fit after all, so decode into a new one
+                Log.w(LOG_TAG, "Unable to reuse bitmap. ", e);
+                pool.put(options.inBitmap);
+                options.inBitmap = null;
+                bitmap = BitmapFactory.decodeByteArray(imageBytes, 0, imageBytes.length, options);
+            }
+        } finally {
+            token.removeListener(stopDecode);
+        }
+
+        if(token.isCancelled()){
+            //Nobody will draw the bitmap, so hand the memory back rather than
+            //leaving it to the garbage collector
+            if(bitmap != null){
+                pool.put(bitmap);
+            } else if(options.inBitmap != null){
+                pool.put(options.inBitmap);
+            }
+            return null;
+        }
+
+        if(bitmap != null){
+            if(options.inBitmap != null && bitmap == options.inBitmap){
+                sReusedBytes.addAndGet(BitmapPool.allocationSize(bitmap));
+            } else {
+                sAllocatedBytes.addAndGet(BitmapPool.allocationSize(bitmap));
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the largest power of two sample size that keeps both dimensions of
+     * the decoded image at or above targetSize
+     */
+    static int calculateInSampleSize(int width, int height, int targetSize){
+        int sampleSize = 1;
+        if(targetSize <= 0){
+            return sampleSize;
+        }
+        while(width / (sampleSize * 2) >= targetSize && height / (sampleSize * 2) >= targetSize){
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Returns the number of bytes of new bitmap memory allocated by decoding
+     */
+    public static long getAllocatedBytes(){
+        return sAllocatedBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes of bitmap memory decoding reused from the pool
+     */
+    public static long getReusedBytes(){
+        return sReusedBytes.get();
+    }
+}
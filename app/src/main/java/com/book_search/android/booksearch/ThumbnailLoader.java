@@ -0,0 +1,313 @@
+package com.book_search.android.booksearch;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.ImageView;
+
+import com.book_search.core.CancellationToken;
+import com.book_search.core.PriorityExecutor;
+import com.book_search.core.PriorityExecutor.Priority;
+import com.book_search.core.SearchMetrics;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Loads book thumbnails into ImageViews in the background.
+ *
+ * Each ImageView remembers the request that is loading into it. When a recycled
+ * row is bound to another book the old request is cancelled, so a slow download
+ * can never overwrite the thumbnail of the book that is now on screen.
+ *
+ * A request is read or downloaded on the image pool and then decoded on the decode
+ * pool, so one thumbnail decodes while the next downloads. Requests for rows on
+ * screen run before requests for rows that are bound but not shown.
+ *
+ * Cancelling a request stops it wherever it is: a queued stage is taken off its pool,
+ * a download in progress has its connection aborted, and a decode in progress is
+ * stopped where the platform allows it.
+ *
+ * A bitmap is only held by an ImageView while its row is attached: it is released
+ * when the row is detached or recycled and when the screen goes, so the cache can
+ * pool it once it is evicted. A row attached again shows it again from the cache.
+ */
+
+public class ThumbnailLoader {
+    //Tag for log messages
+    private static final String LOG_TAG = ThumbnailLoader.class.getSimpleName();
+
+    //Cache the thumbnails are read from and written to
+    private final ThumbnailCache mThumbnailCache;
+
+    //Size, in pixels, thumbnails are decoded for
+    private final int mTargetSize;
+
+    //Handler used to hand decoded thumbnails back to the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //Requests that have not finished, so they can all be cancelled when the screen goes
+    private final Set<ThumbnailRequest> mRequests =
+            Collections.newSetFromMap(new ConcurrentHashMap<ThumbnailRequest, Boolean>());
+
+    //ImageViews showing a bitmap, so they can all be released when the screen goes.
+    //Only used on the main thread.
+    private final Set<ImageView> mShowing =
+            Collections.newSetFromMap(new WeakHashMap<ImageView, Boolean>());
+
+    /**
+     * Constructs a new ThumbnailLoader
+     * @param context of the app
+     */
+    public ThumbnailLoader(Context context){
+        mThumbnailCache = ThumbnailCache.getInstance(context);
+        mTargetSize = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+    }
+
+    /**
+     * Returns the size, in pixels, thumbnails are decoded for
+     */
+    public int getTargetSize(){
+        return mTargetSize;
+    }
+
+    /**
+     * Displays the thumbnail at the given URL in the ImageView, replacing any
+     * request the ImageView was previously bound to. Must be called on the main thread.
+     * @param priority is the priority of the request until it is changed with
+     *                 {@link #setPriority}
+     */
+    public void load(String url, ImageView imageView, Priority priority){
+        cancel(imageView);
+        imageView.setTag(R.id.thumbnail_url, url);
+
+        //Nothing to load, so clear whatever the recycled view was showing
+        if(url == null){
+            setThumbnail(imageView, null);
+            return;
+        }
+
+        //Show thumbnails that are already decoded right away
+        Bitmap cached = mThumbnailCache.acquireBitmap(url);
+        if(cached != null){
+            setThumbnail(imageView, cached);
+            return;
+        }
+
+        setThumbnail(imageView, null);
+        ThumbnailRequest request = new ThumbnailRequest(url, imageView, priority);
+        imageView.setTag(R.id.thumbnail_view, request);
+        mRequests.add(request);
+        request.start();
+    }
+
+    /**
+     * Moves the request the ImageView is bound to, if there is one, to another priority,
+     * such as when its row scrolls on or off the screen
+     */
+    public void setPriority(ImageView imageView, Priority priority){
+        Object tag = imageView.getTag(R.id.thumbnail_view);
+        if(tag instanceof ThumbnailRequest){
+            ((ThumbnailRequest) tag).setPriority(priority);
+        }
+    }
+
+    /**
+     * Cancels the request the ImageView is bound to, if there is one
+     */
+    public void cancel(ImageView imageView){
+        Object tag = imageView.getTag(R.id.thumbnail_view);
+        if(tag instanceof ThumbnailRequest){
+            ((ThumbnailRequest) tag).cancel();
+        }
+        imageView.setTag(R.id.thumbnail_view, null);
+    }
+
+    /**
+     * Cancels the request the ImageView is bound to and releases the bitmap it shows,
+     * such as when its row is recycled. Must be called on the main thread.
+     */
+    public void release(ImageView imageView){
+        cancel(imageView);
+        imageView.setTag(R.id.thumbnail_url, null);
+        setThumbnail(imageView, null);
+    }
+
+    /**
+     * Moves the ImageView's request to visible priority now that its row is attached,
+     * or shows its thumbnail again if it was released when the row was detached.
+     * Must be called on the main thread.
+     */
+    public void onAttached(ImageView imageView){
+        Object url = imageView.getTag(R.id.thumbnail_url);
+        if(imageView.getTag(R.id.thumbnail_view) instanceof ThumbnailRequest){
+            setPriority(imageView, Priority.VISIBLE);
+        } else if(url instanceof String && imageView.getTag(R.id.thumbnail_bitmap) == null){
+            load((String) url, imageView, Priority.VISIBLE);
+        }
+    }
+
+    /**
+     * Moves the ImageView's request to off-screen priority and releases the bitmap it
+     * shows, now that its row is detached. Must be called on the main thread.
+     */
+    public void onDetached(ImageView imageView){
+        setPriority(imageView, Priority.OFFSCREEN);
+        setThumbnail(imageView, null);
+    }
+
+    /**
+     * Cancels every request that has not finished and releases every bitmap shown,
+     * such as when the screen showing the thumbnails is destroyed. Must be called on
+     * the main thread.
+     */
+    public void cancelAll(){
+        for(ThumbnailRequest request : mRequests){
+            request.cancel();
+        }
+        for(ImageView imageView : new ArrayList<>(mShowing)){
+            setThumbnail(imageView, null);
+        }
+    }
+
+    /**
+     * Shows the bitmap in the ImageView and lets the cache know which bitmap the
+     * ImageView stopped showing, so it can be reused once nothing displays it
+     * @param bitmap is a bitmap acquired from the cache, which the ImageView now holds,
+     *               or null
+     */
+    private void setThumbnail(ImageView imageView, Bitmap bitmap){
+        Object previous = imageView.getTag(R.id.thumbnail_bitmap);
+        if(previous == bitmap){
+            //The ImageView already holds the bitmap, so drop the second reference
+            if(bitmap != null){
+                mThumbnailCache.releaseBitmap(bitmap);
+            }
+            return;
+        }
+        imageView.setImageBitmap(bitmap);
+        imageView.setTag(R.id.thumbnail_bitmap, bitmap);
+        if(bitmap != null){
+            mShowing.add(imageView);
+        } else {
+            mShowing.remove(imageView);
+        }
+        if(previous instanceof Bitmap){
+            mThumbnailCache.releaseBitmap((Bitmap) previous);
+        }
+    }
+
+    /**
+     * Loads a single thumbnail and posts it to its ImageView. The request is a task on
+     * the image pool until the thumbnail is read, and then a task on the decode pool.
+     */
+    private class ThumbnailRequest {
+        private final String mUrl;
+        private final WeakReference<ImageView> mImageView;
+        private final long mStart = System.nanoTime();
+        private final CancellationToken mToken = new CancellationToken();
+
+        //Pool and task of the stage that is queued or running
+        private volatile PriorityExecutor mExecutor;
+        private volatile Runnable mStage;
+        private volatile Priority mPriority;
+
+        ThumbnailRequest(String url, ImageView imageView, Priority priority){
+            mUrl = url;
+            mImageView = new WeakReference<>(imageView);
+            mPriority = priority;
+        }
+
+        void start(){
+            runStage(BookExecutors.image(), new Runnable() {
+                @Override
+                public void run() {
+                    final byte[] imageBytes = mToken.isCancelled() ? null
+                            : QueryUtils.getThumbnailBytes(mUrl, mThumbnailCache, mToken);
+                    if(imageBytes == null || mToken.isCancelled()){
+                        mRequests.remove(ThumbnailRequest.this);
+                        return;
+                    }
+                    runStage(BookExecutors.decode(), new Runnable() {
+                        @Override
+                        public void run() {
+                            decode(imageBytes);
+                            mRequests.remove(ThumbnailRequest.this);
+                        }
+                    });
+                }
+            });
+        }
+
+        private void runStage(PriorityExecutor executor, Runnable stage){
+            mExecutor = executor;
+            mStage = stage;
+            executor.execute(stage, mPriority);
+        }
+
+        void setPriority(Priority priority){
+            mPriority = priority;
+            mExecutor.setPriority(mStage, priority);
+        }
+
+        void cancel(){
+            mRequests.remove(this);
+            if(mToken.isCancelled()){
+                return;
+            }
+            if(mExecutor.remove(mStage)){
+                //The stage never ran, so there is nothing to stop
+                mToken.cancel();
+            } else {
+                BookExecutors.cancel(mToken);
+            }
+        }
+
+        private void decode(byte[] imageBytes){
+            if(mToken.isCancelled()){
+                return;
+            }
+            Bitmap thumbnail = QueryUtils.decodeThumbnail(mUrl, imageBytes, mTargetSize,
+                    mThumbnailCache, mToken);
+            if(thumbnail == null){
+                if(!mToken.isCancelled()){
+                    Log.e(LOG_TAG, "Problem decoding thumbnail image " + mUrl);
+                }
+                return;
+            }
+            SearchMetrics.getInstance().recordSince(SearchMetrics.Phase.THUMBNAIL, mStart);
+            if(mToken.isCancelled()){
+                mThumbnailCache.releaseBitmap(thumbnail);
+                return;
+            }
+
+            final Bitmap result = thumbnail;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageView imageView = mImageView.get();
+                    //Only show the thumbnail if the view has not been rebound since
+                    if(imageView == null || mToken.isCancelled()
+                            || imageView.getTag(R.id.thumbnail_view) != ThumbnailRequest.this){
+                        mThumbnailCache.releaseBitmap(result);
+                        return;
+                    }
+                    imageView.setTag(R.id.thumbnail_view, null);
+                    if(imageView.getWindowToken() == null){
+                        //The row is detached, so it shows the cached thumbnail once it
+                        //is attached again instead of holding it in the meantime
+                        mThumbnailCache.releaseBitmap(result);
+                        return;
+                    }
+                    setThumbnail(imageView, result);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.book_search.core;
+
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Measures the two stages of handling a search response: reading, which decodes and
+ * tokenizes the whole response without keeping anything, and parsing, which also
+ * builds the BookRecords. Run with the gc profiler to see the allocation rate of each.
+ */
+
+@State(Scope.Benchmark)
+public class VolumeParserBenchmark {
+
+    //Number of items in the response
+    @Param({"10", "40", "400"})
+    public int items;
+
+    //Encoded response
+    private byte[] mResponse;
+
+    @Setup
+    public void setUp(){
+        mResponse = VolumesFixture.response(items);
+    }
+
+    @Benchmark
+    public JsonReader read() throws IOException{
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(mResponse), Charset.forName("UTF-8")));
+        reader.skipValue();
+        return reader;
+    }
+
+    @Benchmark
+    public List<BookRecord> parse() throws IOException{
+        return VolumeParser.parse(new ByteArrayInputStream(mResponse), null);
+    }
+
+    @Benchmark
+    public List<BookRecord> parseWithProgress() throws IOException{
+        return VolumeParser.parse(new ByteArrayInputStream(mResponse), new BookParser.Listener() {
+            @Override
+            public void onBooksParsed(List<BookRecord> books) {
+            }
+        });
+    }
+}
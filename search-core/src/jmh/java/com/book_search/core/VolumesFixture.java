@@ -0,0 +1,150 @@
+package com.book_search.core;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Builds Google Books volumes responses for the benchmarks. Every item has the fields
+ * a real response has, most of which the parser skips, with text of realistic length.
+ * The same item count always gives the same response.
+ */
+
+final class VolumesFixture {
+
+    //Words the generated text is made of
+    private static final String[] WORDS = {"the", "history", "of", "java", "android",
+            "programming", "a", "guide", "to", "modern", "design", "patterns", "and",
+            "practice", "complete", "reference", "for", "developers", "with", "examples",
+            "performance", "systems", "introduction", "advanced", "concurrency", "caf\u00e9"};
+
+    private VolumesFixture(){
+    }
+
+    /**
+     * Returns the UTF-8 encoded response holding the given number of items
+     */
+    static byte[] response(int items){
+        Random random = new Random(items);
+        StringWriter out = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(out);
+            writer.beginObject();
+            writer.name("kind").value("books#volumes");
+            writer.name("totalItems").value(items * 25);
+            writer.name("items").beginArray();
+            for(int i = 0; i < items; i++){
+                writeItem(writer, i, random);
+            }
+            writer.endArray();
+            writer.endObject();
+            writer.close();
+        } catch (IOException e){
+            throw new AssertionError(e);
+        }
+        return out.toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    private static void writeItem(JsonWriter writer, int index, Random random) throws IOException{
+        String id = "vol" + Integer.toString(random.nextInt(Integer.MAX_VALUE), 36) + index;
+        writer.beginObject();
+        writer.name("kind").value("books#volume");
+        writer.name("id").value(id);
+        writer.name("etag").value(Long.toString(random.nextLong(), 36));
+        writer.name("selfLink").value("https://www.googleapis.com/books/v1/volumes/" + id);
+
+        writer.name("volumeInfo").beginObject();
+        writer.name("title").value(words(random, 2 + random.nextInt(5)));
+        writer.name("subtitle").value(words(random, 3 + random.nextInt(6)));
+        writer.name("authors").beginArray();
+        for(int a = 1 + random.nextInt(3); a > 0; a--){
+            writer.value(capitalize(words(random, 1)) + " " + capitalize(words(random, 1)));
+        }
+        writer.endArray();
+        writer.name("publisher").value(capitalize(words(random, 2)) + " Press");
+        writer.name("publishedDate").value((1950 + random.nextInt(70)) + "-0"
+                + (1 + random.nextInt(9)) + "-1" + random.nextInt(10));
+        writer.name("description").value(words(random, 60 + random.nextInt(60)));
+        writer.name("industryIdentifiers").beginArray();
+        writer.beginObject().name("type").value("ISBN_13")
+                .name("identifier").value("978" + (1000000000L + random.nextInt(999999999)))
+                .endObject();
+        writer.beginObject().name("type").value("ISBN_10")
+                .name("identifier").value(String.valueOf(1000000000L + random.nextInt(999999999)))
+                .endObject();
+        writer.endArray();
+        writer.name("readingModes").beginObject()
+                .name("text").value(random.nextBoolean())
+                .name("image").value(random.nextBoolean())
+                .endObject();
+        writer.name("pageCount").value(80 + random.nextInt(900));
+        writer.name("printType").value("BOOK");
+        writer.name("categories").beginArray().value("Computers").endArray();
+        //Only some books have been rated
+        if(random.nextInt(3) > 0){
+            writer.name("averageRating").value(1 + random.nextInt(9) / 2.0);
+            writer.name("ratingsCount").value(1 + random.nextInt(500));
+        }
+        writer.name("maturityRating").value("NOT_MATURE");
+        writer.name("allowAnonLogging").value(false);
+        writer.name("contentVersion").value("1.2.3.0.preview.3");
+        writer.name("panelizationSummary").beginObject()
+                .name("containsEpubBubbles").value(false)
+                .name("containsImageBubbles").value(false)
+                .endObject();
+        writer.name("imageLinks").beginObject()
+                .name("smallThumbnail").value("http://books.google.com/books/content?id=" + id
+                        + "&printsec=frontcover&img=1&zoom=5&edge=curl&source=gbs_api")
+                .name("thumbnail").value("http://books.google.com/books/content?id=" + id
+                        + "&printsec=frontcover&img=1&zoom=1&edge=curl&source=gbs_api")
+                .endObject();
+        writer.name("language").value("en");
+        writer.name("previewLink").value("http://books.google.com/books?id=" + id
+                + "&printsec=frontcover&dq=java&hl=&cd=" + index + "&source=gbs_api");
+        writer.name("infoLink").value("http://books.google.com/books?id=" + id
+                + "&dq=java&hl=&source=gbs_api");
+        writer.name("canonicalVolumeLink").value("https://books.google.com/books/about/"
+                + id + ".html");
+        writer.endObject();
+
+        writer.name("saleInfo").beginObject()
+                .name("country").value("US")
+                .name("saleability").value("NOT_FOR_SALE")
+                .name("isEbook").value(false)
+                .endObject();
+        writer.name("accessInfo").beginObject()
+                .name("country").value("US")
+                .name("viewability").value("PARTIAL")
+                .name("embeddable").value(true)
+                .name("publicDomain").value(false)
+                .name("textToSpeechPermission").value("ALLOWED")
+                .name("epub").beginObject().name("isAvailable").value(false).endObject()
+                .name("pdf").beginObject().name("isAvailable").value(true).endObject()
+                .name("webReaderLink").value("http://play.google.com/books/reader?id=" + id)
+                .name("accessViewStatus").value("SAMPLE")
+                .name("quoteSharingAllowed").value(false)
+                .endObject();
+        writer.name("searchInfo").beginObject()
+                .name("textSnippet").value(words(random, 20 + random.nextInt(15)))
+                .endObject();
+        writer.endObject();
+    }
+
+    private static String words(Random random, int count){
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < count; i++){
+            if(i > 0){
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private static String capitalize(String word){
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
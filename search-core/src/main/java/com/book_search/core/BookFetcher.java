@@ -0,0 +1,234 @@
+package com.book_search.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.book_search.core.SearchMetrics.Phase;
+
+/**
+ * Makes the HTTP requests of a search: fetching and parsing a page of results, and
+ * downloading thumbnails. Connections are opened and returned through a {@link Connector}.
+ *
+ * Every request records how long its DNS lookup, connect, time to first byte and
+ * download took into {@link SearchMetrics}, along with the bytes it read.
+ *
+ * A request stops as soon as its {@link CancellationToken} is cancelled: its
+ * connection is aborted, which unblocks a read in progress, and the response is
+ * never drained. It then throws {@link CancelledException}.
+ */
+
+public final class BookFetcher {
+    private BookFetcher(){
+    }
+
+    /**
+     * Make an HTTP request to the given URL and return the books parsed from the
+     * response. A failed connection is aborted rather than released, and the
+     * exception is passed on.
+     * @param useCaches is whether an HTTP response cache may be used
+     * @param cacheControl is an optional Cache-Control request header
+     * @param parser parses the response
+     * @param listener is given the books parsed so far while the response downloads,
+     *                 or null
+     * @param token stops the request when cancelled
+     * @throws HttpStatusException if the server did not answer with 200
+     */
+    public static List<BookRecord> fetchBooks(Connector connector, URL url, boolean useCaches,
+                                              String cacheControl, BookParser parser,
+                                              BookParser.Listener listener,
+                                              CancellationToken token)
+            throws IOException{
+        SearchMetrics metrics = SearchMetrics.getInstance();
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        Runnable abort = null;
+        try {
+            //A request that may only be answered from the cache never touches the network
+            boolean offline = cacheControl != null && cacheControl.contains("only-if-cached");
+            long requestStart = System.nanoTime();
+            urlConnection = connect(connector, url, useCaches, cacheControl, !offline, metrics,
+                    token);
+            if(!offline){
+                metrics.recordSearchFirstByte(System.nanoTime() - requestStart);
+            }
+            abort = abortOnCancel(connector, urlConnection, token);
+
+            //If the request was successful (response code 200)
+            //then read the input stream and parse the reponse
+            int responseCode = urlConnection.getResponseCode();
+            if(responseCode != 200){
+                throw new HttpStatusException(responseCode, url.toString());
+            }
+
+            //Reads and parsing are interleaved, so the time blocked in reads is the
+            //download time and the rest is parse time. The bytes are counted both as
+            //they came over the wire and once decompressed.
+            long start = System.nanoTime();
+            TimedInputStream wireStream = new TimedInputStream(urlConnection.getInputStream());
+            TimedInputStream decodedStream = new TimedInputStream(decode(urlConnection, wireStream));
+            inputStream = new CancellableInputStream(decodedStream, token);
+            List<BookRecord> books = parser.parse(inputStream, listener);
+            //The parser keeps the books it read before a failed read, so a cancelled
+            //response would look like a short one
+            token.throwIfCancelled();
+            long elapsed = System.nanoTime() - start;
+            metrics.recordNanos(Phase.DOWNLOAD, wireStream.getReadNanos());
+            metrics.recordNanos(Phase.PARSE, elapsed - wireStream.getReadNanos());
+            metrics.addSearchResponse(wireStream.getBytes(), decodedStream.getBytes());
+            return books;
+        } catch (HttpStatusException e){
+            //The connection is fine, so it is still released below
+            throw e;
+        } catch (IOException e){
+            //The connection is in an unknown state, so don't pool it
+            connector.abort(urlConnection);
+            urlConnection = null;
+            throw cancelledOr(e, token);
+        } finally {
+            if(abort != null){
+                token.removeListener(abort);
+            }
+            //Drain and close the stream so the connection goes back to the pool
+            connector.release(urlConnection, inputStream);
+        }
+    }
+
+    /**
+     * Make an HTTP request to the given URL and return the whole response body
+     * @param token stops the request when cancelled
+     * @throws HttpStatusException if the server did not answer with 200
+     */
+    public static byte[] fetchBytes(Connector connector, URL url, boolean useCaches,
+                                    CancellationToken token) throws IOException{
+        SearchMetrics metrics = SearchMetrics.getInstance();
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        Runnable abort = null;
+        try {
+            urlConnection = connect(connector, url, useCaches, null, true, metrics, token);
+            abort = abortOnCancel(connector, urlConnection, token);
+            int responseCode = urlConnection.getResponseCode();
+            if(responseCode != 200){
+                throw new HttpStatusException(responseCode, url.toString());
+            }
+            long start = System.nanoTime();
+            inputStream = new CancellableInputStream(
+                    decode(urlConnection, urlConnection.getInputStream()), token);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = inputStream.read(buffer)) != -1){
+                output.write(buffer, 0, read);
+            }
+            metrics.recordSince(Phase.THUMBNAIL_FETCH, start);
+            metrics.addThumbnailBytes(output.size());
+            return output.toByteArray();
+        } catch (HttpStatusException e){
+            throw e;
+        } catch (IOException e){
+            connector.abort(urlConnection);
+            urlConnection = null;
+            throw cancelledOr(e, token);
+        } finally {
+            if(abort != null){
+                token.removeListener(abort);
+            }
+            connector.release(urlConnection, inputStream);
+        }
+    }
+
+    /**
+     * Aborts the connection when the token is cancelled, which makes a read blocked on
+     * it fail right away. Returns the listener, to be removed once the request is done.
+     */
+    private static Runnable abortOnCancel(final Connector connector,
+                                          final HttpURLConnection urlConnection,
+                                          CancellationToken token){
+        Runnable abort = new Runnable() {
+            @Override
+            public void run() {
+                connector.abort(urlConnection);
+            }
+        };
+        token.addListener(abort);
+        return abort;
+    }
+
+    /**
+     * Returns a CancelledException in place of the failure if the token was cancelled,
+     * since aborting the connection makes the read in progress fail with an ordinary
+     * IOException, which would otherwise be retried
+     */
+    private static IOException cancelledOr(IOException e, CancellationToken token){
+        if(token.isCancelled() && !(e instanceof CancelledException)){
+            CancelledException cancelled = new CancelledException("Cancelled");
+            cancelled.initCause(e);
+            return cancelled;
+        }
+        return e;
+    }
+
+    /**
+     * Returns the response body, decompressed if the server gzipped it. The connectors
+     * ask for gzip themselves, which leaves the decoding to us on every platform and
+     * makes the bytes read from the connection the bytes that crossed the wire.
+     */
+    private static InputStream decode(HttpURLConnection urlConnection, InputStream body)
+            throws IOException{
+        if("gzip".equalsIgnoreCase(urlConnection.getContentEncoding())){
+            return new GZIPInputStream(body);
+        }
+        return body;
+    }
+
+    /**
+     * Opens the connection, recording the DNS lookup, the connect and the wait for the
+     * response headers as separate phases
+     * @param resolve is whether to time the DNS lookup. The host is resolved before
+     *                connecting, which leaves the connection's own lookup a cache hit.
+     */
+    private static HttpURLConnection connect(Connector connector, URL url, boolean useCaches,
+                                             String cacheControl, boolean resolve,
+                                             SearchMetrics metrics, CancellationToken token)
+            throws IOException{
+        token.throwIfCancelled();
+        long start;
+        if(resolve){
+            start = System.nanoTime();
+            try {
+                InetAddress.getAllByName(url.getHost());
+                metrics.recordSince(Phase.DNS, start);
+            } catch (UnknownHostException e){
+                //The connection fails the same way and reports it
+            }
+        }
+
+        token.throwIfCancelled();
+        start = System.nanoTime();
+        HttpURLConnection urlConnection = connector.open(url, useCaches, cacheControl);
+        metrics.recordSince(Phase.CONNECT, start);
+
+        //The wait for the response headers can be long, so a cancel aborts it too
+        Runnable abort = abortOnCancel(connector, urlConnection, token);
+        start = System.nanoTime();
+        try {
+            urlConnection.getResponseCode();
+            token.throwIfCancelled();
+        } catch (IOException e){
+            connector.abort(urlConnection);
+            throw cancelledOr(e, token);
+        } finally {
+            token.removeListener(abort);
+        }
+        metrics.recordSince(Phase.FIRST_BYTE, start);
+        return urlConnection;
+    }
+}
@@ -0,0 +1,95 @@
+package com.book_search.core;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Merges the results of several catalogs into a single list without duplicates.
+ *
+ * Two books are the same if they share an ISBN-13, or if their titles and first
+ * authors are equal once case, spacing and punctuation are ignored. Either match is
+ * enough, so an edition a catalog lists without ISBNs, or with different ones, is
+ * still recognized by its title and author. The first occurrence is kept, so the
+ * catalogs are merged in order of preference.
+ */
+
+public final class BookMerger {
+    private BookMerger(){
+    }
+
+    /**
+     * Returns the books of every list, in list order, without duplicates
+     * @param results are the books of each catalog, in order of preference. Null
+     *                entries are skipped.
+     */
+    public static List<BookRecord> merge(List<List<BookRecord>> results){
+        int size = 0;
+        for(List<BookRecord> books : results){
+            if(books != null){
+                size += books.size();
+            }
+        }
+        List<BookRecord> merged = new ArrayList<>(size);
+        Set<String> seenIsbns = new HashSet<>();
+        Set<String> seenKeys = new HashSet<>();
+        for(List<BookRecord> books : results){
+            if(books == null){
+                continue;
+            }
+            for(BookRecord book : books){
+                boolean duplicate = false;
+                for(String isbn : book.getIsbns()){
+                    if(seenIsbns.contains(isbn)){
+                        duplicate = true;
+                        break;
+                    }
+                }
+                String key = titleAuthorKey(book);
+                if(key != null && seenKeys.contains(key)){
+                    duplicate = true;
+                }
+                if(duplicate){
+                    continue;
+                }
+                merged.add(book);
+                seenIsbns.addAll(book.getIsbns());
+                if(key != null){
+                    seenKeys.add(key);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Returns the normalized title and first author of the book, or null if it has no
+     * title. Only letters and digits are kept, in lower case.
+     */
+    static String titleAuthorKey(BookRecord book){
+        String title = normalize(book.getTitle());
+        if(title.isEmpty()){
+            return null;
+        }
+        List<String> authors = book.getAuthors();
+        String author = authors.isEmpty() ? "" : normalize(authors.get(0));
+        return title + "\n" + author;
+    }
+
+    private static String normalize(String text){
+        if(text == null){
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(lower.length());
+        for(int i = 0; i < lower.length(); i++){
+            char c = lower.charAt(i);
+            if(Character.isLetterOrDigit(c)){
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+}
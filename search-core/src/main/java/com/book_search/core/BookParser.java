@@ -0,0 +1,31 @@
+package com.book_search.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Parses the search responses of one book catalog into BookRecords
+ */
+
+public interface BookParser {
+
+    /**
+     * Receives the books of a response while it is still being downloaded and parsed
+     */
+    interface Listener {
+        /**
+         * Called each time another batch of books has been parsed, on the thread doing
+         * the parsing, with every book parsed from the response so far
+         */
+        void onBooksParsed(List<BookRecord> books);
+    }
+
+    /**
+     * Parses the response read from the stream. The stream is not closed, so that
+     * the caller can drain it and return the connection to the keep-alive pool.
+     * @param listener is given the books parsed so far while the response downloads,
+     *                 or null
+     */
+    List<BookRecord> parse(InputStream inputStream, Listener listener) throws IOException;
+}
@@ -0,0 +1,143 @@
+package com.book_search.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A book as it was read from a search response, before anything is formatted for display
+ */
+
+public final class BookRecord {
+
+    //Title of the book
+    private final String mTitle;
+
+    //Authors of the book
+    private final List<String> mAuthors;
+
+    //Date the book was published, as sent by the server
+    private final String mPublishedDate;
+
+    //Thumbnail URL for the book, or null if it has none
+    private final String mThumbnailUrl;
+
+    //URL of a smaller variant of the thumbnail, or null if the catalog has none
+    private final String mSmallThumbnailUrl;
+
+    //Rating of the book, or NaN if it has none
+    private final float mRating;
+
+    //Website URL for the book, or null if it has none
+    private final String mInfoLink;
+
+    //ISBN-13s of the book's editions
+    private final List<String> mIsbns;
+
+    /**
+     * Constructs a new BookRecord
+     *
+     * @param title is the title of the book
+     * @param authors are the names of the authors of the book
+     * @param publishedDate is the date the book was published, such as "2004" or "2004-05-01"
+     * @param thumbnailUrl is the URL of the book's thumbnail
+     * @param smallThumbnailUrl is the URL of a smaller variant of the thumbnail, or null
+     * @param rating is the rating for the book, or NaN if it has none
+     * @param infoLink is the URL for the book's website
+     * @param isbns are the ISBN-10s or ISBN-13s of the book's editions, or null
+     */
+    public BookRecord(String title, List<String> authors, String publishedDate,
+                      String thumbnailUrl, String smallThumbnailUrl, float rating,
+                      String infoLink, List<String> isbns){
+        mTitle = title;
+        mAuthors = authors == null || authors.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(authors));
+        mPublishedDate = publishedDate;
+        mThumbnailUrl = thumbnailUrl;
+        mSmallThumbnailUrl = smallThumbnailUrl;
+        mRating = rating;
+        mInfoLink = infoLink;
+        mIsbns = normalizeIsbns(isbns);
+    }
+
+    /**
+     * Returns the title of the book
+     */
+    public String getTitle(){
+        return mTitle;
+    }
+
+    /**
+     * Returns the authors of the book
+     */
+    public List<String> getAuthors(){
+        return mAuthors;
+    }
+
+    /**
+     * Returns the date the book was published, as sent by the server
+     */
+    public String getPublishedDate(){
+        return mPublishedDate;
+    }
+
+    /**
+     * Returns the thumbnail URL for the book, or null if it has none
+     */
+    public String getThumbnailUrl(){
+        return mThumbnailUrl;
+    }
+
+    /**
+     * Returns the URL of a smaller variant of the thumbnail, or null if the catalog
+     * has none
+     */
+    public String getSmallThumbnailUrl(){
+        return mSmallThumbnailUrl;
+    }
+
+    /**
+     * Returns the rating for the book, or NaN if it has none
+     */
+    public float getRating(){
+        return mRating;
+    }
+
+    /**
+     * Returns the website URL for the book, or null if it has none
+     */
+    public String getInfoLink(){
+        return mInfoLink;
+    }
+
+    /**
+     * Returns the ISBN-13s of the book's editions, in the order the server sent them,
+     * without duplicates
+     */
+    public List<String> getIsbns(){
+        return mIsbns;
+    }
+
+    /**
+     * Converts every ISBN to an ISBN-13 and drops invalid ones and duplicates
+     */
+    private static List<String> normalizeIsbns(List<String> isbns){
+        if(isbns == null || isbns.isEmpty()){
+            return Collections.emptyList();
+        }
+        List<String> normalized = new ArrayList<>(isbns.size());
+        for(String isbn : isbns){
+            String isbn13 = Isbn.toIsbn13(isbn);
+            if(isbn13 != null && !normalized.contains(isbn13)){
+                normalized.add(isbn13);
+            }
+        }
+        return Collections.unmodifiableList(normalized);
+    }
+
+    @Override
+    public String toString(){
+        return "BookRecord{title=" + mTitle + ", authors=" + mAuthors + "}";
+    }
+}
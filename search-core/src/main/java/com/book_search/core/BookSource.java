@@ -0,0 +1,29 @@
+package com.book_search.core;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A catalog books can be searched in, such as Google Books or Open Library
+ */
+
+public interface BookSource {
+
+    /**
+     * Returns a short name for the catalog, for logs and statistics
+     */
+    String getName();
+
+    /**
+     * Returns one page of the books matching the query. This is a blocking call.
+     * @param startIndex is the position of the first result of the page
+     * @param maxResults is the number of results in the page
+     * @param listener is given the books parsed so far while the response downloads,
+     *                 or null
+     * @param token stops the search when cancelled
+     * @throws CancelledException if the token was cancelled
+     */
+    List<BookRecord> search(String query, int startIndex, int maxResults,
+                            BookParser.Listener listener, CancellationToken token)
+            throws IOException;
+}
@@ -0,0 +1,39 @@
+package com.book_search.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stops reading as soon as its token is cancelled, so a parser reading from it
+ * gives up at its next read instead of finishing the response
+ */
+
+final class CancellableInputStream extends FilterInputStream {
+
+    //Checked before every read
+    private final CancellationToken mToken;
+
+    CancellableInputStream(InputStream in, CancellationToken token){
+        super(in);
+        mToken = token;
+    }
+
+    @Override
+    public int read() throws IOException{
+        mToken.throwIfCancelled();
+        return super.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException{
+        mToken.throwIfCancelled();
+        return super.read(buffer, offset, length);
+    }
+
+    @Override
+    public long skip(long count) throws IOException{
+        mToken.throwIfCancelled();
+        return super.skip(count);
+    }
+}
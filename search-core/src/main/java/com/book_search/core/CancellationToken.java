@@ -0,0 +1,160 @@
+package com.book_search.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells a request that its caller no longer wants the result.
+ *
+ * Work checks the token between steps, and anything blocked on I/O registers a
+ * listener that unblocks it, such as by aborting its connection. Cancelling is
+ * permanent, and the listeners run once, on the thread that cancels.
+ */
+
+public final class CancellationToken {
+
+    /** A token that is never cancelled, for callers that never cancel */
+    public static final CancellationToken NONE = new CancellationToken(false);
+
+    //Whether this token can be cancelled at all
+    private final boolean mCancellable;
+
+    //Whether the token was cancelled
+    private volatile boolean mCancelled;
+
+    //Listeners to run when the token is cancelled, or null once it has been
+    private List<Runnable> mListeners = new ArrayList<>();
+
+    //Token this one is cancelled along with, or null
+    private final CancellationToken mParent;
+
+    //Listener that cancels this token along with its parent, or null
+    private final Runnable mParentListener;
+
+    public CancellationToken(){
+        this(true);
+    }
+
+    private CancellationToken(boolean cancellable){
+        mCancellable = cancellable;
+        mParent = null;
+        mParentListener = null;
+    }
+
+    private CancellationToken(CancellationToken parent){
+        mCancellable = true;
+        mParent = parent;
+        mParentListener = new Runnable() {
+            @Override
+            public void run() {
+                cancel();
+            }
+        };
+    }
+
+    /**
+     * Returns a token that is cancelled along with this one, and that can also be
+     * cancelled on its own, such as to stop one of several attempts at a request.
+     * Call {@link #detach()} on it once the work it was made for is done.
+     */
+    public CancellationToken newChild(){
+        CancellationToken child = new CancellationToken(this);
+        addListener(child.mParentListener);
+        return child;
+    }
+
+    /**
+     * Stops a token made by {@link #newChild()} from following its parent, so the
+     * parent does not keep it once its work is done
+     */
+    public void detach(){
+        if(mParent != null){
+            mParent.removeListener(mParentListener);
+        }
+    }
+
+    /**
+     * Cancels the token and runs its listeners, unless it was already cancelled
+     */
+    public void cancel(){
+        if(!mCancellable){
+            throw new IllegalStateException("This token can't be cancelled");
+        }
+        List<Runnable> listeners;
+        synchronized (this){
+            if(mCancelled){
+                return;
+            }
+            mCancelled = true;
+            listeners = mListeners;
+            mListeners = null;
+            notifyAll();
+        }
+        for(Runnable listener : listeners){
+            listener.run();
+        }
+    }
+
+    /**
+     * Returns whether the token was cancelled
+     */
+    public boolean isCancelled(){
+        return mCancelled;
+    }
+
+    /**
+     * Throws a CancelledException if the token was cancelled
+     */
+    public void throwIfCancelled() throws CancelledException{
+        if(mCancelled){
+            throw new CancelledException("Cancelled");
+        }
+    }
+
+    /**
+     * Runs the listener when the token is cancelled, or right away if it already was.
+     * Listeners must be quick and must not block.
+     */
+    public void addListener(Runnable listener){
+        if(!mCancellable){
+            return;
+        }
+        synchronized (this){
+            if(!mCancelled){
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Forgets a listener that is no longer needed, such as once the request it would
+     * have stopped is done
+     */
+    public synchronized void removeListener(Runnable listener){
+        if(mListeners != null){
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Waits up to the given time for the token to be cancelled and returns whether it
+     * was, such as to back off between attempts without outliving the caller
+     */
+    public boolean await(long millis) throws InterruptedException{
+        long deadline = System.nanoTime() + millis * 1000000L;
+        synchronized (this){
+            long remaining;
+            while(!mCancelled && (remaining = deadline - System.nanoTime()) > 0){
+                wait(Math.max(1, remaining / 1000000L));
+            }
+            return mCancelled;
+        }
+    }
+
+    @Override
+    public String toString(){
+        return "CancellationToken{cancelled=" + mCancelled + "}";
+    }
+}
@@ -0,0 +1,17 @@
+package com.book_search.core;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a request stops because its {@link CancellationToken} was cancelled.
+ * It is never retried.
+ */
+
+public class CancelledException extends InterruptedIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CancelledException(String message){
+        super(message);
+    }
+}
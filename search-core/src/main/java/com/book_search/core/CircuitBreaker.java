@@ -0,0 +1,111 @@
+package com.book_search.core;
+
+/**
+ * Stops requests to a host that keeps failing, instead of waiting for every one of
+ * them to time out.
+ *
+ * After a number of consecutive failures the breaker opens and rejects requests for a
+ * while. Then a single trial request is let through: if it succeeds the breaker closes
+ * again, and if it fails the breaker stays open for another period.
+ */
+
+public class CircuitBreaker {
+
+    //Consecutive failures that open the breaker
+    private final int mFailureThreshold;
+
+    //How long the breaker stays open before a trial request, in nanoseconds
+    private final long mOpenNanos;
+
+    //Consecutive failures so far
+    private int mFailures;
+
+    //When the breaker opened, in System.nanoTime() terms, while it is open
+    private long mOpenedAt;
+
+    //Whether the breaker is open
+    private boolean mOpen;
+
+    //Whether the trial request after the open period is in flight
+    private boolean mTrialInFlight;
+
+    //Number of requests rejected while open
+    private int mRejected;
+
+    /**
+     * Constructs a new, closed CircuitBreaker
+     * @param failureThreshold is the number of consecutive failures that opens it
+     * @param openMillis is how long it stays open before letting a trial request through
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis){
+        mFailureThreshold = failureThreshold;
+        mOpenNanos = openMillis * 1000000L;
+    }
+
+    /**
+     * Returns whether a request may be made now. Every request that is allowed must
+     * be followed by {@link #recordSuccess}, {@link #recordFailure} or
+     * {@link #recordCancelled}.
+     */
+    public synchronized boolean allowRequest(){
+        if(!mOpen){
+            return true;
+        }
+        if(!mTrialInFlight && System.nanoTime() - mOpenedAt >= mOpenNanos){
+            mTrialInFlight = true;
+            return true;
+        }
+        mRejected++;
+        return false;
+    }
+
+    /**
+     * Records a successful request, which closes the breaker
+     */
+    public synchronized void recordSuccess(){
+        mFailures = 0;
+        mOpen = false;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Records a failed request, which opens the breaker once there have been enough
+     * failures in a row, or keeps it open if this was the trial request
+     */
+    public synchronized void recordFailure(){
+        mFailures++;
+        if(mTrialInFlight || mFailures >= mFailureThreshold){
+            mOpen = true;
+            mTrialInFlight = false;
+            mOpenedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Records a request that was cancelled before it finished, which says nothing
+     * about the host. If it was the trial request, the next request is the trial.
+     */
+    public synchronized void recordCancelled(){
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Returns whether the breaker is open, rejecting requests
+     */
+    public synchronized boolean isOpen(){
+        return mOpen;
+    }
+
+    /**
+     * Returns the number of requests rejected while the breaker was open
+     */
+    public synchronized int getRejectedCount(){
+        return mRejected;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "CircuitBreaker{" + (mOpen ? "open" : "closed") + ", failures=" + mFailures
+                + ", rejected=" + mRejected + "}";
+    }
+}
@@ -0,0 +1,41 @@
+package com.book_search.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Opens HTTP connections for {@link BookFetcher} and takes them back once the
+ * response has been read, so the caller decides how connections are pooled and cached
+ */
+
+public interface Connector {
+
+    /**
+     * User-Agent sent with every request. Google's APIs only gzip responses for a
+     * User-Agent that contains "gzip".
+     */
+    String USER_AGENT = "BookSearch (gzip)";
+
+    /**
+     * Opens and connects a GET request to the given URL, asking for a gzipped response
+     * with Accept-Encoding and {@link #USER_AGENT}. The response is not decompressed;
+     * {@link BookFetcher} does that. The connection must be handed back through
+     * {@link #release} or {@link #abort}.
+     * @param useCaches is whether an HTTP response cache may be used
+     * @param cacheControl is an optional Cache-Control request header
+     */
+    HttpURLConnection open(URL url, boolean useCaches, String cacheControl) throws IOException;
+
+    /**
+     * Finishes with a connection whose response was read successfully
+     * @param inputStream is the response stream, or null if it was never opened
+     */
+    void release(HttpURLConnection urlConnection, InputStream inputStream);
+
+    /**
+     * Closes a connection that failed or was abandoned
+     */
+    void abort(HttpURLConnection urlConnection);
+}
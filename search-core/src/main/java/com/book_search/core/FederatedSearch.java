@@ -0,0 +1,359 @@
+package com.book_search.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Searches several {@link BookSource}s at once and merges their results with
+ * {@link BookMerger}.
+ *
+ * Every source is queried in parallel. The search returns when all of them have
+ * answered or the deadline has passed, whichever is first, with whatever books had
+ * arrived by then: a slow or failing catalog costs its own results, not the search.
+ * A catalog that is still answering when the search returns is cancelled, so it
+ * stops downloading results nobody will see.
+ *
+ * A page is complete when every source answered with fewer books than it was asked
+ * for: none of them has more results, so there is no next page to load.
+ */
+
+public class FederatedSearch {
+    //Logger for failed sources
+    private static final Logger LOG = Logger.getLogger(FederatedSearch.class.getName());
+
+    //Catalogs, in order of preference
+    private final List<BookSource> mSources;
+
+    //Executor the sources are queried on
+    private final Executor mExecutor;
+
+    //Longest time a search waits for its sources, in milliseconds
+    private volatile long mDeadlineMillis;
+
+    //Statistics
+    private final AtomicInteger mSearches = new AtomicInteger();
+    private final AtomicInteger mFailedSources = new AtomicInteger();
+    private final AtomicInteger mLateSources = new AtomicInteger();
+
+    /**
+     * Constructs a new FederatedSearch
+     * @param sources are the catalogs to search, in order of preference
+     * @param executor runs the request to each source. It needs a thread for every
+     *                 source, and must not be the executor the searching thread
+     *                 belongs to.
+     * @param deadlineMillis is the longest time a search waits for its sources
+     */
+    public FederatedSearch(List<BookSource> sources, Executor executor, long deadlineMillis){
+        mSources = Collections.unmodifiableList(new ArrayList<>(sources));
+        mExecutor = executor;
+        mDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Sets the longest time a search waits for its sources, in milliseconds
+     */
+    public void setDeadline(long deadlineMillis){
+        mDeadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * Returns the catalogs, in order of preference
+     */
+    public List<BookSource> getSources(){
+        return mSources;
+    }
+
+    /**
+     * Returns one page of the books matching the query from every source, merged. This
+     * is a blocking call, like {@link #searchPage}.
+     */
+    public List<BookRecord> search(String query, int startIndex, int maxResults,
+                                   BookParser.Listener listener, CancellationToken token)
+            throws IOException{
+        return searchPage(query, startIndex, maxResults, listener, token).getBooks();
+    }
+
+    /**
+     * Returns one page of the books matching the query from every source, merged, and
+     * whether the page is complete. This is a blocking call.
+     * @param startIndex is the position of the first result of the page in every source
+     * @param maxResults is the number of results in the page of every source
+     * @param listener is given the merged books so far while the responses download,
+     *                 or null. It is called on the sources' threads, never after this
+     *                 method has returned.
+     * @param token stops every source, and the wait for them, when cancelled
+     * @throws IOException if no source answered, from the first source that failed, or
+     *                     a SocketTimeoutException if none answered before the deadline
+     * @throws CancelledException if the token was cancelled
+     */
+    public Page searchPage(final String query, final int startIndex, final int maxResults,
+                           BookParser.Listener listener, final CancellationToken token)
+            throws IOException{
+        token.throwIfCancelled();
+        mSearches.incrementAndGet();
+        final Merge merge = new Merge(mSources.size(), maxResults, listener);
+        //Each source has its own token, so the late ones can be stopped on their own
+        final CancellationToken[] sourceTokens = new CancellationToken[mSources.size()];
+        for(int i = 0; i < mSources.size(); i++){
+            final BookSource source = mSources.get(i);
+            final int slot = i;
+            final CancellationToken sourceToken = token.newChild();
+            sourceTokens[i] = sourceToken;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<BookRecord> books = source.search(query, startIndex, maxResults,
+                                merge.listenerFor(slot), sourceToken);
+                        merge.complete(slot, books);
+                    } catch (CancelledException e){
+                        //The search was cancelled or returned without this source,
+                        //which is not the source's failure
+                        merge.fail(slot, e);
+                    } catch (IOException | RuntimeException e){
+                        LOG.log(Level.WARNING, "Search of " + source.getName() + " failed", e);
+                        mFailedSources.incrementAndGet();
+                        merge.fail(slot, e);
+                    } finally {
+                        sourceToken.detach();
+                    }
+                }
+            });
+        }
+
+        //Stop waiting as soon as the search is cancelled, even for a source that is slow
+        //to notice
+        Runnable stopWaiting = new Runnable() {
+            @Override
+            public void run() {
+                merge.cancel();
+            }
+        };
+        token.addListener(stopWaiting);
+        try {
+            if(!merge.await(mDeadlineMillis) && !token.isCancelled()){
+                mLateSources.addAndGet((int) merge.getPendingCount());
+            }
+        } catch (InterruptedException e){
+            merge.discard();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the sources");
+        } finally {
+            token.removeListener(stopWaiting);
+            //Whatever a late source sends now is discarded, so stop it. Sources that
+            //have finished are not affected.
+            for(CancellationToken sourceToken : sourceTokens){
+                sourceToken.cancel();
+            }
+        }
+        if(token.isCancelled()){
+            merge.discard();
+            throw new CancelledException("Search cancelled");
+        }
+        return merge.close();
+    }
+
+    /**
+     * Returns the number of searches made
+     */
+    public int getSearchCount(){
+        return mSearches.get();
+    }
+
+    /**
+     * Returns the number of times a source failed
+     */
+    public int getFailedSourceCount(){
+        return mFailedSources.get();
+    }
+
+    /**
+     * Returns the number of times a source had not answered by the deadline
+     */
+    public int getLateSourceCount(){
+        return mLateSources.get();
+    }
+
+    @Override
+    public String toString(){
+        return "FederatedSearch{sources=" + mSources + ", searches=" + getSearchCount()
+                + ", failed=" + getFailedSourceCount() + ", late=" + getLateSourceCount() + "}";
+    }
+
+    /**
+     * The merged books of a search, and whether they are all the sources have
+     */
+    public static final class Page {
+        private final List<BookRecord> mBooks;
+        private final boolean mComplete;
+
+        Page(List<BookRecord> books, boolean complete){
+            mBooks = books;
+            mComplete = complete;
+        }
+
+        /**
+         * Returns the merged books
+         */
+        public List<BookRecord> getBooks(){
+            return mBooks;
+        }
+
+        /**
+         * Returns whether every source answered with fewer books than it was asked
+         * for, so no source has more results
+         */
+        public boolean isComplete(){
+            return mComplete;
+        }
+    }
+
+    /**
+     * The results of one search as they arrive from each source
+     */
+    private static final class Merge {
+        //Counted down once by every source, whether it succeeded or failed
+        private final CountDownLatch mDone;
+
+        //Books from each source so far, by source position; partial until it completes
+        private final List<List<BookRecord>> mResults;
+
+        //Whether each source finished successfully
+        private final boolean[] mSucceeded;
+
+        //First failure of a source, or null
+        private Exception mFailure;
+
+        //Whether the search has returned, after which nothing is published
+        private boolean mClosed;
+
+        //Number of books asked of every source
+        private final int mMaxResults;
+
+        //Given the merged books so far, or null
+        private final BookParser.Listener mListener;
+
+        Merge(int sourceCount, int maxResults, BookParser.Listener listener){
+            mDone = new CountDownLatch(sourceCount);
+            mResults = new ArrayList<>(Collections.<List<BookRecord>>nCopies(sourceCount, null));
+            mSucceeded = new boolean[sourceCount];
+            mMaxResults = maxResults;
+            mListener = listener;
+        }
+
+        /**
+         * Returns the listener that collects a source's partial results, so a source
+         * that misses the deadline still contributes the books it had parsed
+         */
+        BookParser.Listener listenerFor(final int slot){
+            return new BookParser.Listener() {
+                @Override
+                public void onBooksParsed(List<BookRecord> books) {
+                    update(slot, books);
+                }
+            };
+        }
+
+        void complete(int slot, List<BookRecord> books){
+            synchronized (this){
+                mSucceeded[slot] = true;
+            }
+            update(slot, books);
+            mDone.countDown();
+        }
+
+        void fail(int slot, Exception e){
+            synchronized (this){
+                //A late source stopped by the search says nothing about why it failed
+                if(mFailure == null && !(e instanceof CancelledException)){
+                    mFailure = e;
+                }
+            }
+            mDone.countDown();
+        }
+
+        /**
+         * Stores the source's books and publishes the new merge. The listener is called
+         * under the lock, so merges are published in order and never after close().
+         */
+        private synchronized void update(int slot, List<BookRecord> books){
+            if(mClosed){
+                return;
+            }
+            mResults.set(slot, books);
+            if(mListener != null){
+                mListener.onBooksParsed(BookMerger.merge(mResults));
+            }
+        }
+
+        /**
+         * Releases the wait for the sources without waiting for the ones left
+         */
+        void cancel(){
+            while(mDone.getCount() > 0){
+                mDone.countDown();
+            }
+        }
+
+        /**
+         * Waits for every source, up to the deadline, and returns whether they all finished
+         */
+        boolean await(long deadlineMillis) throws InterruptedException{
+            return mDone.await(deadlineMillis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Returns the number of sources that have not finished
+         */
+        long getPendingCount(){
+            return mDone.getCount();
+        }
+
+        /**
+         * Stops collecting results without merging them
+         */
+        synchronized void discard(){
+            mClosed = true;
+        }
+
+        /**
+         * Stops collecting results and returns the merge of what arrived
+         */
+        synchronized Page close() throws IOException{
+            mClosed = true;
+            boolean anySucceeded = false;
+            boolean anyBooks = false;
+            //Only sources that answered in full with a short page have run out
+            boolean complete = true;
+            for(int i = 0; i < mSucceeded.length; i++){
+                List<BookRecord> books = mResults.get(i);
+                anySucceeded |= mSucceeded[i];
+                anyBooks |= books != null && !books.isEmpty();
+                complete &= mSucceeded[i] && (books == null || books.size() < mMaxResults);
+            }
+            if(anySucceeded || anyBooks){
+                return new Page(BookMerger.merge(mResults), complete);
+            }
+            if(mFailure instanceof IOException){
+                throw (IOException) mFailure;
+            }
+            if(mFailure != null){
+                throw new IOException(mFailure);
+            }
+            if(mResults.isEmpty()){
+                return new Page(Collections.<BookRecord>emptyList(), true);
+            }
+            throw new SocketTimeoutException("No source answered in time");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.book_search.core;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Builds request URLs for the Google Books volumes API
+ */
+
+public final class GoogleBooksApi {
+
+    /** URL for book data from Google API */
+    public static final String VOLUMES_URL = "https://www.googleapis.com/books/v1/volumes";
+
+    /** Partial response selector asking for only the fields {@link VolumeParser} reads */
+    public static final String FIELDS = "items/volumeInfo(title,authors,publishedDate,"
+            + "averageRating,imageLinks(smallThumbnail,thumbnail),infoLink,industryIdentifiers)";
+
+    private GoogleBooksApi(){
+    }
+
+    /**
+     * Create the search URL for the user's input, without paging parameters
+     */
+    public static String buildSearchUrl(String query){
+        return buildSearchUrl(VOLUMES_URL, query);
+    }
+
+    /**
+     * Create the search URL for the user's input on the volumes endpoint at the given
+     * URL, without paging parameters
+     */
+    public static String buildSearchUrl(String volumesUrl, String query){
+        return volumesUrl + "?q=" + encode(query);
+    }
+
+    /**
+     * Returns the search URL for a single page of results, with only the fields the
+     * parser reads
+     * @param searchUrl is a URL returned by {@link #buildSearchUrl}
+     * @param startIndex is the position of the first result of the page
+     * @param maxResults is the number of results in the page
+     */
+    public static String pageUrl(String searchUrl, int startIndex, int maxResults){
+        return searchUrl + "&startIndex=" + startIndex + "&maxResults=" + maxResults
+                + "&fields=" + encode(FIELDS);
+    }
+
+    private static String encode(String value){
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e){
+            //Every JVM supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.book_search.core;
+
+/**
+ * Searches the Google Books volumes API
+ */
+
+public class GoogleBooksSource extends HttpBookSource {
+
+    //URL of the volumes endpoint
+    private final String mVolumesUrl;
+
+    /**
+     * Constructs a source for the public Google Books API
+     */
+    public GoogleBooksSource(Connector connector){
+        this(connector, GoogleBooksApi.VOLUMES_URL);
+    }
+
+    /**
+     * Constructs a source for the volumes endpoint at the given URL
+     */
+    public GoogleBooksSource(Connector connector, String volumesUrl){
+        super("google", connector, VolumeParser.INSTANCE);
+        mVolumesUrl = volumesUrl;
+    }
+
+    @Override
+    protected String buildUrl(String query, int startIndex, int maxResults){
+        return GoogleBooksApi.pageUrl(GoogleBooksApi.buildSearchUrl(mVolumesUrl, query),
+                startIndex, maxResults);
+    }
+}
@@ -0,0 +1,99 @@
+package com.book_search.core;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link BookSource} that searches a catalog's HTTP API. Subclasses build the URL
+ * for a page of results and provide the parser for the catalog's responses.
+ */
+
+public abstract class HttpBookSource implements BookSource {
+
+    //Name of the catalog
+    private final String mName;
+
+    //Opens the connections of every request
+    private final Connector mConnector;
+
+    //Parses the catalog's responses
+    private final BookParser mParser;
+
+    //Retry and hedging policy, and the executor hedged attempts run on, or null
+    private volatile RequestPolicy mPolicy;
+    private volatile Executor mAttemptExecutor;
+
+    protected HttpBookSource(String name, Connector connector, BookParser parser){
+        mName = name;
+        mConnector = connector;
+        mParser = parser;
+    }
+
+    /**
+     * Makes every search go through the policy, retrying failed attempts and hedging
+     * slow ones. Hedged attempts run on attemptExecutor.
+     */
+    public void setRequestPolicy(RequestPolicy policy, Executor attemptExecutor){
+        mAttemptExecutor = attemptExecutor;
+        mPolicy = policy;
+    }
+
+    /**
+     * Returns the retry and hedging policy of searches, or null if there is none
+     */
+    public RequestPolicy getRequestPolicy(){
+        return mPolicy;
+    }
+
+    @Override
+    public String getName(){
+        return mName;
+    }
+
+    /**
+     * Returns the URL for one page of the books matching the query
+     */
+    protected abstract String buildUrl(String query, int startIndex, int maxResults);
+
+    @Override
+    public List<BookRecord> search(String query, int startIndex, int maxResults,
+                                   final BookParser.Listener listener,
+                                   final CancellationToken token) throws IOException{
+        final URL url = new URL(buildUrl(query, startIndex, maxResults));
+        RequestPolicy policy = mPolicy;
+        if(policy == null){
+            return BookFetcher.fetchBooks(mConnector, url, true, null, mParser, listener, token);
+        }
+        return policy.execute(new RequestPolicy.Request<List<BookRecord>>() {
+            @Override
+            public List<BookRecord> attempt(boolean hedge, CancellationToken attemptToken)
+                    throws IOException {
+                //Only the first attempt publishes progress, so two attempts racing
+                //each other don't both feed the listener
+                return BookFetcher.fetchBooks(mConnector, url, true, null, mParser,
+                        hedge ? null : listener, attemptToken);
+            }
+        }, mAttemptExecutor, token);
+    }
+
+    /**
+     * URL-encodes the query
+     */
+    protected static String encode(String query){
+        try {
+            return URLEncoder.encode(query, "UTF-8");
+        } catch (UnsupportedEncodingException e){
+            //Every JVM supports UTF-8
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public String toString(){
+        return mName;
+    }
+}
@@ -0,0 +1,35 @@
+package com.book_search.core;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server answers with a status other than 200
+ */
+
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    //Status code of the response
+    private final int mStatusCode;
+
+    public HttpStatusException(int statusCode, String url){
+        super("Response code " + statusCode + " for " + url);
+        mStatusCode = statusCode;
+    }
+
+    /**
+     * Returns the status code of the response
+     */
+    public int getStatusCode(){
+        return mStatusCode;
+    }
+
+    /**
+     * Returns whether the same request may succeed later: server errors and 429
+     * Too Many Requests. Other client errors will fail again.
+     */
+    public boolean isTransient(){
+        return mStatusCode >= 500 || mStatusCode == 429;
+    }
+}
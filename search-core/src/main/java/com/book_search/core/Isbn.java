@@ -0,0 +1,57 @@
+package com.book_search.core;
+
+/**
+ * Normalizes ISBNs, so the same edition is recognized whichever form a catalog sends
+ */
+
+public final class Isbn {
+
+    private Isbn(){
+    }
+
+    /**
+     * Returns the ISBN-13 for an ISBN-10 or ISBN-13, ignoring hyphens and spaces, or
+     * null if the value is neither
+     */
+    public static String toIsbn13(String isbn){
+        if(isbn == null){
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(13);
+        //Whether the last digit is an X, after which nothing may follow
+        boolean endsWithX = false;
+        for(int i = 0; i < isbn.length(); i++){
+            char c = isbn.charAt(i);
+            if(c == '-' || c == ' '){
+                continue;
+            }
+            if(endsWithX){
+                return null;
+            }
+            if(c >= '0' && c <= '9'){
+                digits.append(c);
+            } else if((c == 'X' || c == 'x') && digits.length() == 9){
+                //Only the check digit of an ISBN-10 may be an X
+                digits.append('X');
+                endsWithX = true;
+            } else {
+                return null;
+            }
+        }
+        if(digits.length() == 13){
+            return digits.toString();
+        }
+        if(digits.length() != 10){
+            return null;
+        }
+        //An ISBN-10 becomes an ISBN-13 by prefixing 978 and recomputing the check digit
+        digits.setLength(9);
+        digits.insert(0, "978");
+        int sum = 0;
+        for(int i = 0; i < 12; i++){
+            int digit = digits.charAt(i) - '0';
+            sum += i % 2 == 0 ? digit : digit * 3;
+        }
+        return digits.append((10 - sum % 10) % 10).toString();
+    }
+}
@@ -0,0 +1,124 @@
+package com.book_search.core;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations, cheap enough to record into on every request.
+ *
+ * Durations are kept in microseconds in logarithmic buckets, four per power of two,
+ * so every reported percentile is within 25% of the real value. Recording is a few
+ * shifts and one atomic increment, and takes no locks.
+ */
+
+public final class LatencyHistogram {
+
+    //Number of bits below the leading one that select the bucket within a power of two
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    //Enough buckets for durations up to 2^40 microseconds, about twelve days
+    private static final int BUCKET_COUNT = (40 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    //Number of durations in each bucket
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records a duration
+     */
+    public void recordNanos(long nanos){
+        long micros = nanos / 1000;
+        mCounts.incrementAndGet(bucketOf(micros < 0 ? 0 : micros));
+    }
+
+    /**
+     * Records the time elapsed since startNanos, a value from {@link System#nanoTime}
+     */
+    public void recordSince(long startNanos){
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the number of recorded durations
+     */
+    public long getCount(){
+        long count = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            count += mCounts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the duration, in milliseconds, that the given fraction of recorded durations
+     * did not exceed, such as 0.95 for the 95th percentile, or 0 if nothing was recorded
+     */
+    public double getPercentileMillis(double fraction){
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        if(rank < 1){
+            rank = 1;
+        }
+        long seen = 0;
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return upperBoundOf(i) / 1000.0;
+            }
+        }
+        return upperBoundOf(BUCKET_COUNT - 1) / 1000.0;
+    }
+
+    /**
+     * Forgets every recorded duration
+     */
+    public void reset(){
+        for(int i = 0; i < BUCKET_COUNT; i++){
+            mCounts.set(i, 0);
+        }
+    }
+
+    /**
+     * Returns "n=... p50=...ms p95=...ms p99=...ms"
+     */
+    @Override
+    public String toString(){
+        return String.format(Locale.ROOT, "n=%d p50=%.1fms p95=%.1fms p99=%.1fms",
+                getCount(), getPercentileMillis(0.50), getPercentileMillis(0.95),
+                getPercentileMillis(0.99));
+    }
+
+    /**
+     * Returns the bucket a duration in microseconds falls into
+     */
+    static int bucketOf(long micros){
+        if(micros < SUB_BUCKETS){
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+                + (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return index < BUCKET_COUNT ? index : BUCKET_COUNT - 1;
+    }
+
+    /**
+     * Returns the largest duration in microseconds that falls into the bucket
+     */
+    static long upperBoundOf(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
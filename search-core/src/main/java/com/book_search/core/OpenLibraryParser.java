@@ -0,0 +1,160 @@
+package com.book_search.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses Open Library search.json responses straight off the stream
+ */
+
+public final class OpenLibraryParser {
+    //Logger for parse problems
+    private static final Logger LOG = Logger.getLogger(OpenLibraryParser.class.getName());
+
+    //Charset of the API's responses
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //Website of a work is this followed by its key, such as "/works/OL27448W"
+    private static final String WEBSITE_URL = "https://openlibrary.org";
+
+    //Cover of a book is this followed by its cover id and a size
+    private static final String COVER_URL = "https://covers.openlibrary.org/b/id/";
+
+    //Most ISBNs kept for a single work
+    private static final int MAX_ISBNS = 50;
+
+    /** The parser as a {@link BookParser}, for {@link BookFetcher} */
+    public static final BookParser INSTANCE = new BookParser() {
+        @Override
+        public List<BookRecord> parse(InputStream inputStream, Listener listener)
+                throws IOException {
+            return OpenLibraryParser.parse(new InputStreamReader(inputStream, UTF_8), listener);
+        }
+    };
+
+    private OpenLibraryParser(){
+    }
+
+    /**
+     * Return a list of books that has been built up from parsing the response. If
+     * there is a listener, it is given the books parsed so far after every
+     * {@link VolumeParser#PROGRESS_BATCH_SIZE} books.
+     * @throws IOException if the response could not be read to the end
+     */
+    public static List<BookRecord> parse(Reader in, BookParser.Listener listener)
+            throws IOException{
+        JsonReader reader = new JsonReader(in);
+        List<BookRecord> books = new ArrayList<>();
+
+        //Keep the books that were parsed before malformed JSON. A failed read is
+        //passed on, so the source counts as failed rather than complete.
+        try{
+            reader.beginObject();
+            while(reader.hasNext()){
+                //The key called "docs" holds the books; everything else is skipped
+                if(reader.nextName().equals("docs") && reader.peek() == JsonToken.BEGIN_ARRAY){
+                    reader.beginArray();
+                    while(reader.hasNext()){
+                        books.add(readDoc(reader));
+                        if(listener != null
+                                && books.size() % VolumeParser.PROGRESS_BATCH_SIZE == 0){
+                            listener.onBooksParsed(new ArrayList<>(books));
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e){
+            LOG.log(Level.WARNING, "Problem parsing the Open Library results", e);
+        }
+        return books;
+    }
+
+    /**
+     * Read a single object of the "docs" array
+     */
+    private static BookRecord readDoc(JsonReader reader) throws IOException{
+        String title = "";
+        List<String> authors = new ArrayList<>();
+        String publishedYear = "";
+        float rating = Float.NaN;
+        String coverUrl = null;
+        String infoLink = null;
+        List<String> isbns = null;
+
+        reader.beginObject();
+        while(reader.hasNext()){
+            String name = reader.nextName();
+            if(reader.peek() == JsonToken.NULL){
+                reader.skipValue();
+                continue;
+            }
+            switch(name){
+                case "title":
+                    title = reader.nextString();
+                    break;
+                case "author_name":
+                    reader.beginArray();
+                    while(reader.hasNext()){
+                        authors.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                case "first_publish_year":
+                    publishedYear = reader.nextString();
+                    break;
+                case "ratings_average":
+                    rating = (float) reader.nextDouble();
+                    break;
+                case "cover_i":
+                    coverUrl = COVER_URL + reader.nextLong() + "-M.jpg";
+                    break;
+                case "key":
+                    infoLink = WEBSITE_URL + reader.nextString();
+                    break;
+                case "isbn":
+                    isbns = readIsbns(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        //The small covers are too small for a list row, so there is no small variant
+        return new BookRecord(title, authors, publishedYear, coverUrl, null, rating, infoLink,
+                isbns);
+    }
+
+    /**
+     * Read the "isbn" array, which lists the ISBNs of every edition of the work. At
+     * most MAX_ISBNS are kept, which is plenty to match the edition another catalog has.
+     */
+    private static List<String> readIsbns(JsonReader reader) throws IOException{
+        List<String> isbns = new ArrayList<>();
+        reader.beginArray();
+        while(reader.hasNext()){
+            if(isbns.size() < MAX_ISBNS){
+                isbns.add(reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return isbns;
+    }
+}
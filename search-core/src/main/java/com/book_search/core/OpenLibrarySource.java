@@ -0,0 +1,39 @@
+package com.book_search.core;
+
+/**
+ * Searches the Open Library search API
+ */
+
+public class OpenLibrarySource extends HttpBookSource {
+
+    /** URL of the public search endpoint */
+    public static final String SEARCH_URL = "https://openlibrary.org/search.json";
+
+    //Only the fields a BookRecord needs are requested, which keeps responses small
+    private static final String FIELDS =
+            "key,title,author_name,first_publish_year,isbn,cover_i,ratings_average";
+
+    //URL of the search endpoint
+    private final String mSearchUrl;
+
+    /**
+     * Constructs a source for the public Open Library API
+     */
+    public OpenLibrarySource(Connector connector){
+        this(connector, SEARCH_URL);
+    }
+
+    /**
+     * Constructs a source for the search endpoint at the given URL
+     */
+    public OpenLibrarySource(Connector connector, String searchUrl){
+        super("openlibrary", connector, OpenLibraryParser.INSTANCE);
+        mSearchUrl = searchUrl;
+    }
+
+    @Override
+    protected String buildUrl(String query, int startIndex, int maxResults){
+        return mSearchUrl + "?q=" + encode(query) + "&offset=" + startIndex
+                + "&limit=" + maxResults + "&fields=" + FIELDS;
+    }
+}
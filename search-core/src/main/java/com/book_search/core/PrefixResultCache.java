@@ -0,0 +1,158 @@
+package com.book_search.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the results of recent queries, by normalized query, and answers a longer
+ * query from a shorter one it extends.
+ *
+ * When "harry" has been searched, "harry pot" is answered by the results of "harry"
+ * whose text has a word starting with every term. The narrowing only happens at word
+ * boundaries: the server matches whole words, so the results of "harr" say nothing
+ * about "harry". A narrowed answer is never complete: the server matches more fields
+ * than the matcher sees, such as subtitles and descriptions, so it is shown right
+ * away but still checked against the network.
+ */
+
+public class PrefixResultCache<T> {
+
+    /**
+     * Decides whether a cached result matches the terms of a longer query
+     */
+    public interface Matcher<T> {
+        /**
+         * @param terms are the normalized terms of the query
+         */
+        boolean matches(T item, List<String> terms);
+    }
+
+    /**
+     * Results found in the cache
+     */
+    public static final class Hit<T> {
+        private final String mQuery;
+        private final List<T> mItems;
+        private final boolean mComplete;
+
+        Hit(String query, List<T> items, boolean complete){
+            mQuery = query;
+            mItems = items;
+            mComplete = complete;
+        }
+
+        /**
+         * Returns the cached query the results came from, which is a prefix of the
+         * query looked up if the results were narrowed
+         */
+        public String getQuery(){
+            return mQuery;
+        }
+
+        /**
+         * Returns the results, in the order the server sent them
+         */
+        public List<T> getItems(){
+            return mItems;
+        }
+
+        /**
+         * Returns whether these are all the results, so the network has nothing to add
+         */
+        public boolean isComplete(){
+            return mComplete;
+        }
+    }
+
+    //Decides which cached results a longer query keeps
+    private final Matcher<T> mMatcher;
+
+    //Results by normalized query, least recently used first
+    private final LinkedHashMap<String, Hit<T>> mEntries;
+
+    //Statistics
+    private final AtomicInteger mHits = new AtomicInteger();
+    private final AtomicInteger mNarrowedHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    /**
+     * Constructs a new PrefixResultCache
+     * @param maxQueries is the most queries whose results are kept
+     */
+    public PrefixResultCache(final int maxQueries, Matcher<T> matcher){
+        mMatcher = matcher;
+        mEntries = new LinkedHashMap<String, Hit<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Hit<T>> eldest) {
+                return size() > maxQueries;
+            }
+        };
+    }
+
+    /**
+     * Remembers the results of the query
+     * @param complete is whether these are all the results the server has
+     */
+    public synchronized void put(String query, List<T> items, boolean complete){
+        String key = QueryNormalizer.normalize(query);
+        if(key.isEmpty() || items == null){
+            return;
+        }
+        mEntries.put(key, new Hit<>(key,
+                Collections.unmodifiableList(new ArrayList<>(items)), complete));
+    }
+
+    /**
+     * Returns the results of the query, narrowed from the longest cached query it
+     * extends by whole words if it was not searched itself, or null if neither is cached
+     */
+    public synchronized Hit<T> get(String query){
+        String key = QueryNormalizer.normalize(query);
+        Hit<T> exact = mEntries.get(key);
+        if(exact != null){
+            mHits.incrementAndGet();
+            return exact;
+        }
+
+        Hit<T> longest = null;
+        for(Map.Entry<String, Hit<T>> entry : mEntries.entrySet()){
+            String cached = entry.getKey();
+            if(key.length() > cached.length() && key.startsWith(cached)
+                    && key.charAt(cached.length()) == ' '
+                    && (longest == null || cached.length() > longest.getQuery().length())){
+                longest = entry.getValue();
+            }
+        }
+        if(longest == null){
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        List<String> terms = QueryNormalizer.terms(key);
+        List<T> narrowed = new ArrayList<>();
+        for(T item : longest.getItems()){
+            if(mMatcher.matches(item, terms)){
+                narrowed.add(item);
+            }
+        }
+        mNarrowedHits.incrementAndGet();
+        return new Hit<>(longest.getQuery(), Collections.unmodifiableList(narrowed), false);
+    }
+
+    /**
+     * Forgets every query
+     */
+    public synchronized void clear(){
+        mEntries.clear();
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "PrefixResultCache{queries=" + mEntries.size() + ", hits=" + mHits.get()
+                + ", narrowedHits=" + mNarrowedHits.get() + ", misses=" + mMisses.get() + "}";
+    }
+}
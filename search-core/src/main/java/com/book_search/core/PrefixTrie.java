@@ -0,0 +1,168 @@
+package com.book_search.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * An in-memory trie of search terms, such as past queries and book titles, that
+ * returns the most used completions of a prefix.
+ *
+ * Terms are keyed by their normalized form ({@link QueryNormalizer}) and keep the
+ * text they were first added with for display. Adding a term again adds to its weight.
+ * The trie holds at most a fixed number of terms; once it is full, new terms are
+ * dropped while the weights of known terms still grow.
+ */
+
+public class PrefixTrie {
+
+    //Orders terms by weight, heaviest first, then alphabetically
+    private static final Comparator<Node> BY_WEIGHT = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            if(a.mWeight != b.mWeight){
+                return a.mWeight > b.mWeight ? -1 : 1;
+            }
+            return a.mText.compareTo(b.mText);
+        }
+    };
+
+    /**
+     * A character of a term. Children are kept in small parallel arrays, which takes
+     * far less memory than a map per node.
+     */
+    private static final class Node {
+        char[] mKeys = new char[0];
+        Node[] mChildren = new Node[0];
+
+        //Display text and weight of the term ending here, or null if none does
+        String mText;
+        long mWeight;
+
+        Node child(char key){
+            for(int i = 0; i < mKeys.length; i++){
+                if(mKeys[i] == key){
+                    return mChildren[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(char key){
+            int size = mKeys.length;
+            char[] keys = new char[size + 1];
+            Node[] children = new Node[size + 1];
+            System.arraycopy(mKeys, 0, keys, 0, size);
+            System.arraycopy(mChildren, 0, children, 0, size);
+            keys[size] = key;
+            children[size] = new Node();
+            mKeys = keys;
+            mChildren = children;
+            return children[size];
+        }
+    }
+
+    //Root of the trie, for the empty prefix
+    private final Node mRoot = new Node();
+
+    //Most terms the trie holds
+    private final int mMaxTerms;
+
+    //Number of terms in the trie
+    private int mSize;
+
+    /**
+     * Constructs a new PrefixTrie
+     * @param maxTerms is the most terms the trie holds
+     */
+    public PrefixTrie(int maxTerms){
+        mMaxTerms = maxTerms;
+    }
+
+    /**
+     * Adds the term, or adds to its weight if it is already in the trie
+     * @param text is the term as it should be shown
+     * @param weight is added to the term's weight
+     */
+    public synchronized void add(String text, long weight){
+        String key = QueryNormalizer.normalize(text);
+        if(key.isEmpty()){
+            return;
+        }
+        //Walk as far as the trie already goes before deciding whether there is room
+        Node node = mRoot;
+        int i = 0;
+        for(; i < key.length(); i++){
+            Node child = node.child(key.charAt(i));
+            if(child == null){
+                break;
+            }
+            node = child;
+        }
+        boolean known = i == key.length() && node.mText != null;
+        if(!known && mSize >= mMaxTerms){
+            return;
+        }
+        for(; i < key.length(); i++){
+            node = node.addChild(key.charAt(i));
+        }
+        if(node.mText == null){
+            node.mText = text.trim();
+            mSize++;
+        }
+        node.mWeight += weight;
+    }
+
+    /**
+     * Returns up to limit terms that start with the prefix, heaviest first
+     */
+    public synchronized List<String> suggest(String prefix, int limit){
+        Node node = mRoot;
+        String key = QueryNormalizer.normalize(prefix);
+        for(int i = 0; i < key.length() && node != null; i++){
+            node = node.child(key.charAt(i));
+        }
+        if(node == null || limit <= 0){
+            return Collections.emptyList();
+        }
+
+        //Keep the heaviest terms of the subtree in a heap whose head is the lightest
+        PriorityQueue<Node> best = new PriorityQueue<>(limit,
+                Collections.reverseOrder(BY_WEIGHT));
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while(!pending.isEmpty()){
+            Node current = pending.pop();
+            if(current.mText != null){
+                if(best.size() < limit){
+                    best.add(current);
+                } else if(BY_WEIGHT.compare(current, best.peek()) < 0){
+                    best.poll();
+                    best.add(current);
+                }
+            }
+            for(Node child : current.mChildren){
+                pending.push(child);
+            }
+        }
+
+        List<Node> nodes = new ArrayList<>(best);
+        Collections.sort(nodes, BY_WEIGHT);
+        List<String> suggestions = new ArrayList<>(nodes.size());
+        for(Node suggestion : nodes){
+            suggestions.add(suggestion.mText);
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns the number of terms in the trie
+     */
+    public synchronized int size(){
+        return mSize;
+    }
+}
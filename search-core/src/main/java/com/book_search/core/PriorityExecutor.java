@@ -0,0 +1,293 @@
+package com.book_search.core;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of threads that runs the most urgent queued task first.
+ *
+ * Every task has a {@link Priority}, and tasks of the same priority run in the order
+ * they were submitted. A task that is still queued can be moved to another priority,
+ * such as when the row it loads for scrolls into view.
+ *
+ * The pool keeps track of how many tasks are queued at each priority, the deepest the
+ * queue has been, and how long tasks of each priority waited before they started.
+ */
+
+public class PriorityExecutor implements Executor {
+
+    /**
+     * How urgent a task is, from the most to the least urgent
+     */
+    public enum Priority {
+        /** Work for something the user is looking at */
+        VISIBLE,
+        /** Work for something that is loaded but not on screen */
+        OFFSCREEN,
+        /** Work for something the user may want later */
+        PREFETCH
+    }
+
+    //How long an idle thread is kept before it is stopped, in seconds
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    //Name of the pool, for its threads and statistics
+    private final String mName;
+
+    //Pool the tasks run on
+    private final ThreadPoolExecutor mPool;
+
+    //Order in which tasks were submitted, to keep tasks of the same priority in order
+    private final AtomicLong mSequence = new AtomicLong();
+
+    //Most tasks that have been queued at once
+    private final AtomicInteger mMaxQueued = new AtomicInteger();
+
+    //How long tasks waited in the queue, for each priority
+    private final LatencyHistogram[] mWaits = new LatencyHistogram[Priority.values().length];
+
+    /**
+     * Constructs a new PriorityExecutor
+     * @param name is the name of the pool, used for its threads
+     * @param threads is the most tasks that run at the same time
+     * @param threadFactory creates the pool's threads, or null for the default threads
+     */
+    public PriorityExecutor(final String name, int threads, final ThreadFactory threadFactory){
+        mName = name;
+        for(int i = 0; i < mWaits.length; i++){
+            mWaits[i] = new LatencyHistogram();
+        }
+        ThreadFactory namedFactory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = threadFactory != null
+                        ? threadFactory.newThread(runnable) : new Thread(runnable);
+                thread.setName(name + "-" + mCount.incrementAndGet());
+                return thread;
+            }
+        };
+        mPool = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), namedFactory) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable runnable) {
+                PriorityTask task = (PriorityTask) runnable;
+                if(!task.isCancelled()){
+                    mWaits[task.mPriority.ordinal()].recordSince(task.mQueuedAt);
+                }
+            }
+        };
+        mPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the task with {@link Priority#VISIBLE} priority
+     */
+    @Override
+    public void execute(Runnable task){
+        execute(task, Priority.VISIBLE);
+    }
+
+    /**
+     * Runs the task once every more urgent task, and every task of the same priority
+     * submitted before it, has started
+     */
+    public void execute(Runnable task, Priority priority){
+        mPool.execute(new PriorityTask(task, priority, mSequence.getAndIncrement()));
+        int queued = mPool.getQueue().size();
+        int max;
+        while(queued > (max = mMaxQueued.get()) && !mMaxQueued.compareAndSet(max, queued)){
+            //Another thread raised the maximum first, so compare again
+        }
+    }
+
+    /**
+     * Runs the callable with the given priority and returns its pending result
+     */
+    public <V> Future<V> submit(Callable<V> callable, Priority priority){
+        FutureTask<V> future = new FutureTask<>(callable);
+        execute(future, priority);
+        return future;
+    }
+
+    /**
+     * Returns an executor that runs every task on this pool with the given priority
+     */
+    public Executor withPriority(final Priority priority){
+        return new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                PriorityExecutor.this.execute(task, priority);
+            }
+        };
+    }
+
+    /**
+     * Moves the task to another priority, if it is still queued. Returns whether it was.
+     * @param task is a task given to {@link #execute} or a future from {@link #submit}
+     */
+    public boolean setPriority(Object task, Priority priority){
+        PriorityTask queued = find(task);
+        if(queued == null || queued.mPriority == priority){
+            return queued != null;
+        }
+        //A queued task can only change its place in the queue by leaving it and coming back
+        if(!mPool.getQueue().remove(queued)){
+            return false;
+        }
+        queued.mPriority = priority;
+        mPool.getQueue().add(queued);
+        return true;
+    }
+
+    /**
+     * Moves the task to the given priority if it is still queued at a less urgent one
+     */
+    public boolean raisePriority(Object task, Priority priority){
+        PriorityTask queued = find(task);
+        return queued != null && priority.compareTo(queued.mPriority) < 0
+                && setPriority(task, priority);
+    }
+
+    /**
+     * Takes the task out of the queue, so it never runs. Returns whether it was queued.
+     */
+    public boolean remove(Object task){
+        PriorityTask queued = find(task);
+        return queued != null && mPool.getQueue().remove(queued);
+    }
+
+    /**
+     * Returns the number of tasks waiting to run, not counting cancelled ones
+     */
+    public int getQueueDepth(){
+        int depth = 0;
+        for(Runnable runnable : mPool.getQueue()){
+            if(!((PriorityTask) runnable).isCancelled()){
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of tasks of the given priority waiting to run
+     */
+    public int getQueueDepth(Priority priority){
+        int depth = 0;
+        for(Runnable runnable : mPool.getQueue()){
+            PriorityTask task = (PriorityTask) runnable;
+            if(task.mPriority == priority && !task.isCancelled()){
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the most tasks that have been queued at once
+     */
+    public int getMaxQueueDepth(){
+        return mMaxQueued.get();
+    }
+
+    /**
+     * Returns how long tasks of the given priority waited before they started
+     */
+    public LatencyHistogram getWaitTimes(Priority priority){
+        return mWaits[priority.ordinal()];
+    }
+
+    /**
+     * Returns the number of tasks that are running
+     */
+    public int getActiveCount(){
+        return mPool.getActiveCount();
+    }
+
+    /**
+     * Stops the pool's threads once the tasks that are running finish. Queued tasks
+     * never run.
+     */
+    public void shutdownNow(){
+        mPool.shutdownNow();
+    }
+
+    /**
+     * Returns the queued task that is or wraps the given task, or null
+     */
+    private PriorityTask find(Object task){
+        Iterator<Runnable> queued = mPool.getQueue().iterator();
+        while(queued.hasNext()){
+            PriorityTask candidate = (PriorityTask) queued.next();
+            if(candidate == task || candidate.mTask == task){
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the pool's threads, queue depths and wait times, one line for each priority
+     */
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder(String.format(Locale.ROOT,
+                "%s: threads=%d active=%d queued=%d maxQueued=%d completed=%d",
+                mName, mPool.getMaximumPoolSize(), mPool.getActiveCount(), getQueueDepth(),
+                getMaxQueueDepth(), mPool.getCompletedTaskCount()));
+        for(Priority priority : Priority.values()){
+            builder.append("\n  ").append(priority.name().toLowerCase(Locale.ROOT))
+                    .append(": queued=").append(getQueueDepth(priority))
+                    .append(" wait ").append(getWaitTimes(priority));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * A task in the queue, ordered by priority and then by when it was submitted
+     */
+    private static final class PriorityTask implements Runnable, Comparable<PriorityTask> {
+        private final Runnable mTask;
+        private final long mSequence;
+        private final long mQueuedAt = System.nanoTime();
+
+        //Only changed while the task is out of the queue, so the queue stays ordered
+        private volatile Priority mPriority;
+
+        PriorityTask(Runnable task, Priority priority, long sequence){
+            mTask = task;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        boolean isCancelled(){
+            return mTask instanceof Future && ((Future<?>) mTask).isCancelled();
+        }
+
+        @Override
+        public void run() {
+            mTask.run();
+        }
+
+        @Override
+        public int compareTo(PriorityTask other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            if(byPriority != 0){
+                return byPriority;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.book_search.core;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Turns search input into a canonical query, so the same search typed differently
+ * shares one cache entry and one in-flight request: " Harry  Potter", "harry potter"
+ * and "HARRY POTTER" all become "harry potter".
+ */
+
+public final class QueryNormalizer {
+    private QueryNormalizer(){
+    }
+
+    /**
+     * Returns the canonical form of the query: Unicode NFKC, lower case, without
+     * leading or trailing whitespace and with every run of whitespace turned into a
+     * single space. Returns an empty string for null.
+     */
+    public static String normalize(String query){
+        if(query == null){
+            return "";
+        }
+        //NFKC folds full-width letters, ligatures and composed accents into one form
+        String text = Normalizer.normalize(query, Normalizer.Form.NFKC);
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for(int i = 0; i < text.length(); i++){
+            char c = text.charAt(i);
+            if(Character.isWhitespace(c) || Character.isSpaceChar(c)){
+                space = normalized.length() > 0;
+            } else {
+                if(space){
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the terms of a normalized query
+     */
+    public static List<String> terms(String normalizedQuery){
+        if(normalizedQuery.isEmpty()){
+            return Collections.emptyList();
+        }
+        List<String> terms = new ArrayList<>();
+        int start = 0;
+        int space;
+        while((space = normalizedQuery.indexOf(' ', start)) != -1){
+            terms.add(normalizedQuery.substring(start, space));
+            start = space + 1;
+        }
+        terms.add(normalizedQuery.substring(start));
+        return terms;
+    }
+
+    /**
+     * Returns whether every term is the start of some word of the normalized text,
+     * as it would be for a result of the terms typed so far. Words are separated by
+     * anything but letters and digits, so "(illustrated" and "potter:" are words too.
+     */
+    public static boolean matchesTermPrefixes(String normalizedText, List<String> terms){
+        for(String term : terms){
+            if(!startsWord(normalizedText, term)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether the term appears in the text at the start of a word
+     */
+    private static boolean startsWord(String text, String term){
+        int index = text.indexOf(term);
+        while(index != -1){
+            if(index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1))){
+                return true;
+            }
+            index = text.indexOf(term, index + 1);
+        }
+        return false;
+    }
+}
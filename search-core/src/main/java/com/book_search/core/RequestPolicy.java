@@ -0,0 +1,306 @@
+package com.book_search.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs idempotent requests with bounded retries and, optionally, hedging.
+ *
+ * A failed attempt is retried after an exponential backoff with full jitter, as long
+ * as the failure may be transient: an I/O error, a server error or 429. When hedging
+ * is on and an attempt takes longer than a percentile of recent attempts, a second
+ * attempt is started alongside it and whichever succeeds first is used. Each attempt
+ * has its own {@link CancellationToken}, and the one that loses is cancelled, so the
+ * two race rather than both downloading the whole response.
+ */
+
+public class RequestPolicy {
+
+    /**
+     * A request that can be attempted more than once
+     */
+    public interface Request<T> {
+        /**
+         * Makes one attempt at the request
+         * @param hedge is whether this is a hedged attempt running alongside another one
+         * @param token stops the attempt when cancelled, which happens when the caller
+         *              cancels or the other attempt has won
+         */
+        T attempt(boolean hedge, CancellationToken token) throws IOException;
+    }
+
+    //Number of attempts the percentile must be based on before hedging starts
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    //Maximum number of attempts, including the first
+    private final int mMaxAttempts;
+
+    //Backoff before the first retry, doubled for every later retry, in milliseconds
+    private final long mInitialBackoffMillis;
+
+    //Upper bound of the backoff, in milliseconds
+    private final long mMaxBackoffMillis;
+
+    //Fraction of attempts that finish before a hedge is started, or 0 if hedging is off
+    private volatile double mHedgePercentile;
+
+    //Hedges are never started sooner than this, in milliseconds
+    private volatile long mMinHedgeDelayMillis;
+
+    //Latency of successful attempts, which the hedge delay is based on
+    private final LatencyHistogram mLatency = new LatencyHistogram();
+
+    //Source of the backoff jitter
+    private final Random mRandom = new Random();
+
+    //Statistics
+    private final AtomicInteger mRetries = new AtomicInteger();
+    private final AtomicInteger mHedges = new AtomicInteger();
+    private final AtomicInteger mHedgeWins = new AtomicInteger();
+
+    /**
+     * Constructs a new RequestPolicy without hedging
+     * @param maxAttempts is the maximum number of attempts, including the first
+     * @param initialBackoffMillis is the longest wait before the first retry
+     * @param maxBackoffMillis is the longest wait before any retry
+     */
+    public RequestPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis){
+        mMaxAttempts = Math.max(1, maxAttempts);
+        mInitialBackoffMillis = initialBackoffMillis;
+        mMaxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Turns hedging on. Once enough attempts have been made, an attempt that has not
+     * finished within the given percentile of their latency, and at least minDelayMillis,
+     * gets a hedged attempt alongside it.
+     * @param percentile is a fraction such as 0.95, or 0 to turn hedging off
+     */
+    public void setHedging(double percentile, long minDelayMillis){
+        mHedgePercentile = percentile;
+        mMinHedgeDelayMillis = minDelayMillis;
+    }
+
+    /**
+     * Runs the request, retrying and hedging it according to the policy. Attempts
+     * run on the executor when hedging is on, and on the calling thread otherwise.
+     * The executor must not be the one the calling thread belongs to, or a full pool
+     * could wait on itself.
+     * @throws IOException from the last attempt if every attempt failed
+     */
+    public <T> T execute(Request<T> request, Executor executor) throws IOException{
+        return execute(request, executor, CancellationToken.NONE);
+    }
+
+    /**
+     * Runs the request like {@link #execute(Request, Executor)}, making no more attempts
+     * and cutting the backoff short once the token is cancelled. The attempts are
+     * given tokens that are cancelled along with it.
+     * @throws CancelledException if the token was cancelled
+     */
+    public <T> T execute(Request<T> request, Executor executor, CancellationToken token)
+            throws IOException{
+        for(int attempt = 0; ; attempt++){
+            token.throwIfCancelled();
+            try {
+                return attemptHedged(request, executor, token);
+            } catch (IOException e){
+                if(attempt + 1 >= mMaxAttempts || !isRetryable(e) || token.isCancelled()){
+                    throw e;
+                }
+            }
+            mRetries.incrementAndGet();
+            try {
+                if(token.await(backoffMillis(attempt))){
+                    throw new CancelledException("Cancelled while backing off");
+                }
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while backing off");
+            }
+        }
+    }
+
+    /**
+     * Returns the backoff before retry number attempt + 1: a random time between zero
+     * and the initial backoff doubled once for every earlier retry, capped at the maximum
+     */
+    long backoffMillis(int attempt){
+        long ceiling = mInitialBackoffMillis << Math.min(attempt, 30);
+        if(ceiling <= 0 || ceiling > mMaxBackoffMillis){
+            ceiling = mMaxBackoffMillis;
+        }
+        synchronized (mRandom){
+            return (long) (mRandom.nextDouble() * ceiling);
+        }
+    }
+
+    /**
+     * Returns whether a failed attempt may succeed if it is made again
+     */
+    static boolean isRetryable(IOException e){
+        if(e instanceof HttpStatusException){
+            return ((HttpStatusException) e).isTransient();
+        }
+        //A timeout is worth retrying, but an interrupted thread is not
+        return !(e instanceof InterruptedIOException) || e instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Makes one attempt, and a hedged one alongside it if the first is slow
+     */
+    private <T> T attemptHedged(final Request<T> request, Executor executor,
+                                CancellationToken token) throws IOException{
+        long hedgeDelay = hedgeDelayMillis();
+        if(hedgeDelay < 0){
+            long start = System.nanoTime();
+            T result = request.attempt(false, token);
+            mLatency.recordSince(start);
+            return result;
+        }
+
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        final long start = System.nanoTime();
+        final CancellationToken primaryToken = token.newChild();
+        Future<T> primary = completion.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T result = request.attempt(false, primaryToken);
+                mLatency.recordSince(start);
+                return result;
+            }
+        });
+        CancellationToken hedgeToken = null;
+        Future<T> hedge = null;
+        try {
+            Future<T> done = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if(done == null){
+                //The first attempt is slower than usual, so race a second one against it
+                mHedges.incrementAndGet();
+                final long hedgeStart = System.nanoTime();
+                final CancellationToken attemptToken = token.newChild();
+                hedgeToken = attemptToken;
+                hedge = completion.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        T result = request.attempt(true, attemptToken);
+                        mLatency.recordSince(hedgeStart);
+                        return result;
+                    }
+                });
+                done = completion.take();
+            }
+            try {
+                T result = done.get();
+                if(done == hedge){
+                    mHedgeWins.incrementAndGet();
+                }
+                return result;
+            } catch (ExecutionException e){
+                if(hedge == null){
+                    throw unwrap(e);
+                }
+                //One attempt failed, so wait for the other one
+                Future<T> other = completion.take();
+                try {
+                    T result = other.get();
+                    if(other == hedge){
+                        mHedgeWins.incrementAndGet();
+                    }
+                    return result;
+                } catch (ExecutionException otherFailure){
+                    throw unwrap(done == primary ? e : otherFailure);
+                }
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the request");
+        } finally {
+            //The losing attempt's result is not needed. Interrupting it does not unblock
+            //a read, so its token is cancelled too, which aborts its connection. The
+            //winner has finished, so cancelling its token does nothing.
+            primary.cancel(true);
+            cancelLater(primaryToken, executor);
+            if(hedge != null){
+                hedge.cancel(true);
+                cancelLater(hedgeToken, executor);
+            }
+        }
+    }
+
+    /**
+     * Cancels an attempt's token on the executor, since aborting a connection can
+     * block and the caller has its result to return
+     */
+    private static void cancelLater(final CancellationToken token, Executor executor){
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                token.cancel();
+                token.detach();
+            }
+        });
+    }
+
+    /**
+     * Returns how long to wait before hedging, or -1 if there should be no hedge
+     */
+    private long hedgeDelayMillis(){
+        double percentile = mHedgePercentile;
+        if(percentile <= 0 || mLatency.getCount() < MIN_HEDGE_SAMPLES){
+            return -1;
+        }
+        return Math.max(mMinHedgeDelayMillis, (long) mLatency.getPercentileMillis(percentile));
+    }
+
+    private static IOException unwrap(ExecutionException e){
+        Throwable cause = e.getCause();
+        if(cause instanceof IOException){
+            return (IOException) cause;
+        }
+        if(cause instanceof RuntimeException){
+            throw (RuntimeException) cause;
+        }
+        if(cause instanceof Error){
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Returns the number of retries made
+     */
+    public int getRetryCount(){
+        return mRetries.get();
+    }
+
+    /**
+     * Returns the number of hedged attempts started
+     */
+    public int getHedgeCount(){
+        return mHedges.get();
+    }
+
+    /**
+     * Returns the number of hedged attempts that finished before the attempt they hedged
+     */
+    public int getHedgeWinCount(){
+        return mHedgeWins.get();
+    }
+
+    @Override
+    public String toString(){
+        return "RequestPolicy{retries=" + getRetryCount() + ", hedges=" + getHedgeCount()
+                + ", hedgeWins=" + getHedgeWinCount() + ", attemptLatency=" + mLatency + "}";
+    }
+}
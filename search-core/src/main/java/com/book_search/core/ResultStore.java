@@ -0,0 +1,428 @@
+package com.book_search.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds every result loaded for a search and shows them in the order and with the
+ * filter the user picked, without asking the server again.
+ *
+ * The sort keys of a result, its rating, publication year and normalized title, are
+ * worked out once when it is added. The results are kept sorted in the current order,
+ * so a new page is sorted on its own and merged in rather than sorting everything
+ * again. Only changing the order, or results that disappear or change, sorts the
+ * whole list.
+ *
+ * In relevance order the results keep the order they were loaded in, except that
+ * results whose title matches the query more closely come first: the exact title,
+ * then titles starting with the query, then titles with a word starting with every
+ * term. The other orders fall back to relevance for results that compare equal.
+ *
+ * A ResultStore is not thread-safe. It is meant to be used from a single background
+ * thread, with the lists it returns handed to the main thread.
+ */
+
+public final class ResultStore<T> {
+
+    /**
+     * Reads the fields of a result the store sorts and filters by
+     */
+    public interface Fields<T> {
+        /**
+         * Returns the key that identifies the result, so a result loaded twice is
+         * only kept once
+         */
+        String getKey(T item);
+
+        String getTitle(T item);
+
+        /**
+         * Returns the rating of the result, or NaN if it has none
+         */
+        float getRating(T item);
+
+        /**
+         * Returns the date the result was published, such as "2004" or "2004-05-01",
+         * or null
+         */
+        String getPublishedDate(T item);
+    }
+
+    /**
+     * Order the results are shown in
+     */
+    public enum Order {
+        /** The order they were loaded in, re-ranked by how closely the title matches */
+        RELEVANCE,
+        /** Highest rating first, unrated results last */
+        RATING,
+        /** Most recently published first, results without a year last */
+        NEWEST,
+        /** Alphabetical by title, ignoring case and spacing */
+        TITLE
+    }
+
+    /**
+     * Which results are shown
+     */
+    public static final class Filter {
+        /** Shows every result */
+        public static final Filter NONE = new Filter(0, false);
+
+        private final int mMinYear;
+        private final boolean mRatedOnly;
+
+        /**
+         * @param minYear is the earliest year of publication shown, or 0 for any year.
+         *                Results without a year are hidden unless it is 0.
+         * @param ratedOnly is whether results without a rating are hidden
+         */
+        public Filter(int minYear, boolean ratedOnly){
+            mMinYear = minYear;
+            mRatedOnly = ratedOnly;
+        }
+
+        public int getMinYear(){
+            return mMinYear;
+        }
+
+        public boolean isRatedOnly(){
+            return mRatedOnly;
+        }
+
+        boolean accepts(Entry<?> entry){
+            return (mMinYear <= 0 || entry.mYear >= mMinYear)
+                    && (!mRatedOnly || !Float.isNaN(entry.mRating));
+        }
+
+        @Override
+        public boolean equals(Object other){
+            if(!(other instanceof Filter)){
+                return false;
+            }
+            Filter filter = (Filter) other;
+            return mMinYear == filter.mMinYear && mRatedOnly == filter.mRatedOnly;
+        }
+
+        @Override
+        public int hashCode(){
+            return 31 * mMinYear + (mRatedOnly ? 1 : 0);
+        }
+    }
+
+    //How closely a title matches the query, from the closest
+    private static final int MATCH_EXACT = 0;
+    private static final int MATCH_PREFIX = 1;
+    private static final int MATCH_TERMS = 2;
+    private static final int MATCH_NONE = 3;
+
+    //Reads the fields of the results
+    private final Fields<T> mFields;
+
+    //Normalized query and its terms, for relevance
+    private String mQuery = "";
+    private List<String> mTerms = Collections.emptyList();
+
+    private Order mOrder = Order.RELEVANCE;
+    private Filter mFilter = Filter.NONE;
+
+    //Every result by key
+    private Map<String, Entry<T>> mEntries = new HashMap<>();
+
+    //Every result, sorted in the current order
+    private List<Entry<T>> mSorted = new ArrayList<>();
+
+    //Results that pass the filter, in order, or null until they are asked for again
+    private List<T> mView;
+
+    //Statistics
+    private int mMerges;
+    private int mFullSorts;
+
+    /**
+     * Constructs a new ResultStore
+     * @param fields reads the fields of the results
+     */
+    public ResultStore(Fields<T> fields){
+        mFields = fields;
+    }
+
+    /**
+     * Sets the query results are re-ranked by in relevance order. Returns the results
+     * shown.
+     */
+    public List<T> setQuery(String query){
+        String normalized = QueryNormalizer.normalize(query);
+        if(!normalized.equals(mQuery)){
+            mQuery = normalized;
+            mTerms = QueryNormalizer.terms(normalized);
+            for(Entry<T> entry : mSorted){
+                entry.mMatch = match(entry.mTitle);
+            }
+            sortAll();
+        }
+        return getItems();
+    }
+
+    /**
+     * Replaces the results with the given ones, in the order they were loaded, and
+     * returns the results shown. Results are recognized by key, so when the list only
+     * adds results to the previous one, which is the case when a page arrives, only
+     * the new results are sorted.
+     */
+    public List<T> setItems(List<T> items){
+        Map<String, Entry<T>> entries = new HashMap<>(items.size() * 2);
+        List<Entry<T>> added = new ArrayList<>();
+        //Whether the results kept so far are still in the same order, unchanged
+        boolean appended = true;
+        int previous = -1;
+        int kept = 0;
+        for(T item : items){
+            String key = mFields.getKey(item);
+            if(entries.containsKey(key)){
+                continue;
+            }
+            Entry<T> entry = mEntries.get(key);
+            if(entry != null && entry.mItem.equals(item)){
+                appended &= entry.mPosition > previous;
+                previous = entry.mPosition;
+                kept++;
+            } else {
+                appended &= entry == null;
+                entry = newEntry(item);
+                added.add(entry);
+            }
+            //Kept results only move past the new ones, so their order among
+            //themselves, and in the sorted list, stays the same
+            entry.mPosition = entries.size();
+            entries.put(key, entry);
+        }
+        appended &= kept == mEntries.size();
+        mEntries = entries;
+
+        if(appended){
+            if(!added.isEmpty()){
+                Collections.sort(added, comparator());
+                mSorted = merge(mSorted, added, comparator());
+                mMerges++;
+                mView = null;
+            }
+        } else {
+            mSorted = new ArrayList<>(entries.values());
+            sortAll();
+        }
+        return getItems();
+    }
+
+    /**
+     * Sets the order the results are shown in and returns them
+     */
+    public List<T> setOrder(Order order){
+        if(order != mOrder){
+            mOrder = order;
+            sortAll();
+        }
+        return getItems();
+    }
+
+    /**
+     * Sets which results are shown and returns them
+     */
+    public List<T> setFilter(Filter filter){
+        if(!filter.equals(mFilter)){
+            mFilter = filter;
+            mView = null;
+        }
+        return getItems();
+    }
+
+    public Order getOrder(){
+        return mOrder;
+    }
+
+    public Filter getFilter(){
+        return mFilter;
+    }
+
+    /**
+     * Returns the results that pass the filter, in the current order. The list is not
+     * changed by later calls, so it can be handed to another thread.
+     */
+    public List<T> getItems(){
+        if(mView == null){
+            List<T> view = new ArrayList<>(mSorted.size());
+            for(Entry<T> entry : mSorted){
+                if(mFilter.accepts(entry)){
+                    view.add(entry.mItem);
+                }
+            }
+            mView = Collections.unmodifiableList(view);
+        }
+        return mView;
+    }
+
+    /**
+     * Returns the number of results, including the ones the filter hides
+     */
+    public int size(){
+        return mSorted.size();
+    }
+
+    @Override
+    public String toString(){
+        return "ResultStore{size=" + mSorted.size() + ", shown=" + getItems().size()
+                + ", order=" + mOrder + ", merges=" + mMerges
+                + ", fullSorts=" + mFullSorts + "}";
+    }
+
+    private Entry<T> newEntry(T item){
+        Entry<T> entry = new Entry<>(item);
+        entry.mTitle = QueryNormalizer.normalize(mFields.getTitle(item));
+        entry.mRating = mFields.getRating(item);
+        entry.mYear = parseYear(mFields.getPublishedDate(item));
+        entry.mMatch = match(entry.mTitle);
+        return entry;
+    }
+
+    private void sortAll(){
+        Collections.sort(mSorted, comparator());
+        mFullSorts++;
+        mView = null;
+    }
+
+    /**
+     * Returns how closely the normalized title matches the query
+     */
+    private int match(String title){
+        if(mTerms.isEmpty()){
+            return MATCH_EXACT;
+        }
+        if(title.equals(mQuery)){
+            return MATCH_EXACT;
+        }
+        if(title.startsWith(mQuery)){
+            return MATCH_PREFIX;
+        }
+        if(QueryNormalizer.matchesTermPrefixes(title, mTerms)){
+            return MATCH_TERMS;
+        }
+        return MATCH_NONE;
+    }
+
+    private Comparator<Entry<T>> comparator(){
+        switch(mOrder){
+            case RATING:
+                return new Comparator<Entry<T>>() {
+                    @Override
+                    public int compare(Entry<T> first, Entry<T> second) {
+                        boolean firstRated = !Float.isNaN(first.mRating);
+                        if(firstRated != !Float.isNaN(second.mRating)){
+                            return firstRated ? -1 : 1;
+                        }
+                        int byRating = Float.compare(second.mRating, first.mRating);
+                        return byRating != 0 ? byRating : byRelevance(first, second);
+                    }
+                };
+            case NEWEST:
+                return new Comparator<Entry<T>>() {
+                    @Override
+                    public int compare(Entry<T> first, Entry<T> second) {
+                        //Results without a year have year 0, which puts them last
+                        int byYear = second.mYear - first.mYear;
+                        return byYear != 0 ? byYear : byRelevance(first, second);
+                    }
+                };
+            case TITLE:
+                return new Comparator<Entry<T>>() {
+                    @Override
+                    public int compare(Entry<T> first, Entry<T> second) {
+                        boolean firstEmpty = first.mTitle.isEmpty();
+                        if(firstEmpty != second.mTitle.isEmpty()){
+                            return firstEmpty ? 1 : -1;
+                        }
+                        int byTitle = first.mTitle.compareTo(second.mTitle);
+                        return byTitle != 0 ? byTitle : byRelevance(first, second);
+                    }
+                };
+            default:
+                return new Comparator<Entry<T>>() {
+                    @Override
+                    public int compare(Entry<T> first, Entry<T> second) {
+                        return byRelevance(first, second);
+                    }
+                };
+        }
+    }
+
+    /**
+     * Orders the closest title matches first, and then by the order results were
+     * loaded in. No two results compare equal.
+     */
+    private static int byRelevance(Entry<?> first, Entry<?> second){
+        if(first.mMatch != second.mMatch){
+            return first.mMatch - second.mMatch;
+        }
+        return first.mPosition - second.mPosition;
+    }
+
+    /**
+     * Returns the two sorted lists merged into one sorted list
+     */
+    private static <T> List<Entry<T>> merge(List<Entry<T>> first, List<Entry<T>> second,
+                                            Comparator<Entry<T>> comparator){
+        List<Entry<T>> merged = new ArrayList<>(first.size() + second.size());
+        int i = 0;
+        int j = 0;
+        while(i < first.size() && j < second.size()){
+            if(comparator.compare(first.get(i), second.get(j)) <= 0){
+                merged.add(first.get(i++));
+            } else {
+                merged.add(second.get(j++));
+            }
+        }
+        merged.addAll(first.subList(i, first.size()));
+        merged.addAll(second.subList(j, second.size()));
+        return merged;
+    }
+
+    /**
+     * Returns the year a date such as "2004-05-01" starts with, or 0 if it does not
+     * start with four digits
+     */
+    static int parseYear(String publishedDate){
+        if(publishedDate == null || publishedDate.length() < 4){
+            return 0;
+        }
+        int year = 0;
+        for(int i = 0; i < 4; i++){
+            char c = publishedDate.charAt(i);
+            if(c < '0' || c > '9'){
+                return 0;
+            }
+            year = year * 10 + (c - '0');
+        }
+        return year;
+    }
+
+    /**
+     * A result with its sort keys
+     */
+    static final class Entry<T> {
+        final T mItem;
+        String mTitle;
+        float mRating;
+        int mYear;
+        int mMatch;
+
+        //Position of the result in the order it was loaded
+        int mPosition;
+
+        Entry(T item){
+            mItem = item;
+        }
+    }
+}
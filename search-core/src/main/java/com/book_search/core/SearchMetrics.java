@@ -0,0 +1,196 @@
+package com.book_search.core;
+
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms for every phase of a search and of a thumbnail load, and the
+ * number of bytes each transferred, so slow searches can be traced to the phase that
+ * made them slow and devices and networks can be compared.
+ */
+
+public final class SearchMetrics {
+
+    /**
+     * The phases that are timed
+     */
+    public enum Phase {
+        /** A whole search, from the call to the books being returned */
+        SEARCH,
+        /** Resolving the host name of a request */
+        DNS,
+        /** Opening the connection, including TLS, or taking one from the pool */
+        CONNECT,
+        /** Waiting for the response headers after connecting */
+        FIRST_BYTE,
+        /** Time spent blocked reading the body of a search response */
+        DOWNLOAD,
+        /** Time spent parsing a search response, not counting the reads */
+        PARSE,
+        /** A whole thumbnail load that missed the memory cache */
+        THUMBNAIL,
+        /** Downloading the bytes of a thumbnail */
+        THUMBNAIL_FETCH,
+        /** Decoding a thumbnail into a bitmap */
+        THUMBNAIL_DECODE
+    }
+
+    //Metrics shared by the whole app
+    private static final SearchMetrics sInstance = new SearchMetrics();
+
+    //Histogram for every phase
+    private final Map<Phase, LatencyHistogram> mHistograms = new EnumMap<>(Phase.class);
+
+    //Bytes of search responses and thumbnails read from the network or the HTTP cache
+    private final AtomicLong mSearchBytes = new AtomicLong();
+    private final AtomicLong mThumbnailBytes = new AtomicLong();
+
+    //Bytes of search responses once decompressed, and the number of responses
+    private final AtomicLong mSearchDecodedBytes = new AtomicLong();
+    private final AtomicLong mSearchResponses = new AtomicLong();
+
+    //Time to first byte of the first search request over the network, in
+    //nanoseconds, or -1 before it
+    private final AtomicLong mFirstSearchFirstByteNanos = new AtomicLong(-1);
+
+    /**
+     * Creates an empty set of metrics. Most callers use {@link #getInstance}.
+     */
+    public SearchMetrics(){
+        for(Phase phase : Phase.values()){
+            mHistograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Returns the metrics shared by the whole app
+     */
+    public static SearchMetrics getInstance(){
+        return sInstance;
+    }
+
+    /**
+     * Returns the histogram of the phase
+     */
+    public LatencyHistogram get(Phase phase){
+        return mHistograms.get(phase);
+    }
+
+    /**
+     * Records the time the phase took since startNanos, a value from {@link System#nanoTime}
+     */
+    public void recordSince(Phase phase, long startNanos){
+        mHistograms.get(phase).recordSince(startNanos);
+    }
+
+    /**
+     * Records how long the phase took
+     */
+    public void recordNanos(Phase phase, long nanos){
+        mHistograms.get(phase).recordNanos(nanos);
+    }
+
+    /**
+     * Adds to the bytes of search responses transferred
+     */
+    public void addSearchBytes(long bytes){
+        mSearchBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Records a search response
+     * @param wireBytes is its size as transferred, compressed or not
+     * @param decodedBytes is its size once decompressed
+     */
+    public void addSearchResponse(long wireBytes, long decodedBytes){
+        mSearchBytes.addAndGet(wireBytes);
+        mSearchDecodedBytes.addAndGet(decodedBytes);
+        mSearchResponses.incrementAndGet();
+    }
+
+    /**
+     * Records the time to first byte of a search request over the network, from the
+     * DNS lookup to the response headers. Only the first one is kept, since it is the
+     * only one that may have to open its connections from scratch.
+     */
+    public void recordSearchFirstByte(long nanos){
+        mFirstSearchFirstByteNanos.compareAndSet(-1, nanos);
+    }
+
+    /**
+     * Returns the time to first byte of the first search request over the network, in
+     * nanoseconds, or -1 if none has been made
+     */
+    public long getFirstSearchFirstByteNanos(){
+        return mFirstSearchFirstByteNanos.get();
+    }
+
+    /**
+     * Adds to the bytes of thumbnails transferred
+     */
+    public void addThumbnailBytes(long bytes){
+        mThumbnailBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Returns the bytes of search responses transferred
+     */
+    public long getSearchBytes(){
+        return mSearchBytes.get();
+    }
+
+    /**
+     * Returns the bytes of thumbnails transferred
+     */
+    public long getThumbnailBytes(){
+        return mThumbnailBytes.get();
+    }
+
+    /**
+     * Returns the average size of a search response as transferred, or 0 before any
+     */
+    public long getBytesPerSearchResponse(){
+        long responses = mSearchResponses.get();
+        return responses == 0 ? 0 : mSearchBytes.get() / responses;
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public void reset(){
+        for(LatencyHistogram histogram : mHistograms.values()){
+            histogram.reset();
+        }
+        mSearchBytes.set(0);
+        mThumbnailBytes.set(0);
+        mSearchDecodedBytes.set(0);
+        mSearchResponses.set(0);
+        mFirstSearchFirstByteNanos.set(-1);
+    }
+
+    /**
+     * Writes one line per phase, then the bytes transferred
+     */
+    public void dump(String prefix, PrintWriter writer){
+        for(Phase phase : Phase.values()){
+            writer.print(prefix);
+            writer.print(phase.name().toLowerCase(Locale.ROOT));
+            writer.print(": ");
+            writer.println(mHistograms.get(phase));
+        }
+        writer.print(prefix);
+        writer.print("bytes: search=");
+        writer.print(mSearchBytes.get());
+        writer.print(" decoded=");
+        writer.print(mSearchDecodedBytes.get());
+        writer.print(" responses=");
+        writer.print(mSearchResponses.get());
+        writer.print(" perResponse=");
+        writer.print(getBytesPerSearchResponse());
+        writer.print(" thumbnails=");
+        writer.println(mThumbnailBytes.get());
+    }
+}
@@ -0,0 +1,68 @@
+package com.book_search.core;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read through it and the time spent blocked in reads, which
+ * separates download time from the time spent processing what was read
+ */
+
+final class TimedInputStream extends FilterInputStream {
+
+    //Bytes read so far
+    private long mBytes;
+
+    //Nanoseconds spent in reads so far
+    private long mReadNanos;
+
+    TimedInputStream(InputStream in){
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException{
+        long start = System.nanoTime();
+        int b = super.read();
+        mReadNanos += System.nanoTime() - start;
+        if(b != -1){
+            mBytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException{
+        long start = System.nanoTime();
+        int read = super.read(buffer, offset, length);
+        mReadNanos += System.nanoTime() - start;
+        if(read > 0){
+            mBytes += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException{
+        long start = System.nanoTime();
+        long skipped = super.skip(n);
+        mReadNanos += System.nanoTime() - start;
+        mBytes += skipped;
+        return skipped;
+    }
+
+    /**
+     * Returns the bytes read so far
+     */
+    long getBytes(){
+        return mBytes;
+    }
+
+    /**
+     * Returns the nanoseconds spent in reads so far
+     */
+    long getReadNanos(){
+        return mReadNanos;
+    }
+}
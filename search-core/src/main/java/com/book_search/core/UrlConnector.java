@@ -0,0 +1,78 @@
+package com.book_search.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * A {@link Connector} that opens plain HttpURLConnections with fixed timeouts,
+ * for use outside the app, such as in tests and benchmarks
+ */
+
+public class UrlConnector implements Connector {
+
+    //Timeouts applied to every connection, in milliseconds
+    private final int mConnectTimeout;
+    private final int mReadTimeout;
+
+    /**
+     * Constructs a new UrlConnector
+     * @param connectTimeout is the timeout for establishing a connection, in milliseconds
+     * @param readTimeout is the timeout for reading from a connection, in milliseconds
+     */
+    public UrlConnector(int connectTimeout, int readTimeout){
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    @Override
+    public HttpURLConnection open(URL url, boolean useCaches, String cacheControl)
+            throws IOException{
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        urlConnection.setConnectTimeout(mConnectTimeout);
+        urlConnection.setReadTimeout(mReadTimeout);
+        urlConnection.setRequestMethod("GET");
+        urlConnection.setUseCaches(useCaches);
+        urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+        urlConnection.setRequestProperty("User-Agent", USER_AGENT);
+        if(cacheControl != null){
+            urlConnection.addRequestProperty("Cache-Control", cacheControl);
+        }
+        try {
+            urlConnection.connect();
+        } catch (IOException e){
+            urlConnection.disconnect();
+            throw e;
+        }
+        return urlConnection;
+    }
+
+    @Override
+    public void release(HttpURLConnection urlConnection, InputStream inputStream){
+        if(urlConnection == null){
+            return;
+        }
+        try {
+            if(inputStream == null){
+                inputStream = urlConnection.getErrorStream();
+            }
+            if(inputStream != null){
+                byte[] buffer = new byte[1024];
+                while(inputStream.read(buffer) != -1){
+                    //Drain the stream so the connection can be reused
+                }
+                inputStream.close();
+            }
+        } catch (IOException e){
+            urlConnection.disconnect();
+        }
+    }
+
+    @Override
+    public void abort(HttpURLConnection urlConnection){
+        if(urlConnection != null){
+            urlConnection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.book_search.core;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses Google Books volumes responses straight off the stream. The response is
+ * never held in memory as a whole; only the fields a BookRecord needs are kept.
+ */
+
+public final class VolumeParser {
+    //Logger for parse problems
+    private static final Logger LOG = Logger.getLogger(VolumeParser.class.getName());
+
+    //Charset of the API's responses
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Number of parsed books between two progress updates */
+    public static final int PROGRESS_BATCH_SIZE = 5;
+
+    /** The parser as a {@link BookParser}, for {@link BookFetcher} */
+    public static final BookParser INSTANCE = new BookParser() {
+        @Override
+        public List<BookRecord> parse(InputStream inputStream, BookParser.Listener listener)
+                throws IOException {
+            return VolumeParser.parse(inputStream, listener);
+        }
+    };
+
+    private VolumeParser(){
+    }
+
+    /**
+     * Parses the response read from the stream. The stream is not closed, so that
+     * the caller can drain it and return the connection to the keep-alive pool.
+     */
+    public static List<BookRecord> parse(InputStream inputStream, BookParser.Listener listener)
+            throws IOException{
+        if(inputStream == null){
+            return null;
+        }
+        return parse(new InputStreamReader(inputStream, UTF_8), listener);
+    }
+
+    /**
+     * Return a list of books that has been built up from parsing the response. If
+     * there is a listener, it is given the books parsed so far after every
+     * {@link #PROGRESS_BATCH_SIZE} books.
+     * @throws IOException if the response could not be read to the end, so a
+     *                     transfer that failed part way is never taken for a short page
+     */
+    public static List<BookRecord> parse(Reader in, BookParser.Listener listener) throws IOException{
+        JsonReader reader = new JsonReader(in);
+        //Create an empty ArrayList that we can add books to
+        List<BookRecord> books = new ArrayList<>();
+
+        //If there's a problem with the way the JSON is formatted, the reader throws
+        //an exception. Keep the books that were parsed before the problem. A failed
+        //read is passed on, so the request can be retried.
+        try{
+            reader.beginObject();
+            while(reader.hasNext()){
+                //The key called "items" holds the list of items (or books).
+                //Everything else in the response is skipped.
+                if(reader.nextName().equals("items") && reader.peek() == JsonToken.BEGIN_ARRAY){
+                    reader.beginArray();
+                    while(reader.hasNext()){
+                        BookRecord book = readItem(reader);
+                        if(book != null){
+                            books.add(book);
+                            if(listener != null && books.size() % PROGRESS_BATCH_SIZE == 0){
+                                listener.onBooksParsed(new ArrayList<>(books));
+                            }
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e){
+            LOG.log(Level.WARNING, "Problem parsing the book JSON results", e);
+        }
+        return books;
+    }
+
+    /**
+     * Read a single item of the "items" array, or return null if the item has
+     * no "volumeInfo"
+     */
+    private static BookRecord readItem(JsonReader reader) throws IOException{
+        BookRecord book = null;
+        reader.beginObject();
+        while(reader.hasNext()){
+            if(reader.nextName().equals("volumeInfo")){
+                book = readVolumeInfo(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return book;
+    }
+
+    /**
+     * Read the "volumeInfo" object of an item and create a BookRecord from the title,
+     * authors, published date, rating, thumbnail, website URL and ISBN
+     */
+    private static BookRecord readVolumeInfo(JsonReader reader) throws IOException{
+        String title = "";
+        List<String> authors = new ArrayList<>();
+        String publishedDate = "";
+        float rating = Float.NaN;
+        String thumbnailUrl = null;
+        String smallThumbnailUrl = null;
+        String infoLink = null;
+        List<String> isbns = null;
+
+        reader.beginObject();
+        while(reader.hasNext()){
+            String name = reader.nextName();
+            if(reader.peek() == JsonToken.NULL){
+                reader.skipValue();
+                continue;
+            }
+            switch(name){
+                case "title":
+                    title = reader.nextString();
+                    break;
+                case "authors":
+                    reader.beginArray();
+                    while(reader.hasNext()){
+                        authors.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                case "publishedDate":
+                    publishedDate = reader.nextString();
+                    break;
+                case "averageRating":
+                    rating = (float) reader.nextDouble();
+                    break;
+                case "imageLinks":
+                    reader.beginObject();
+                    while(reader.hasNext()){
+                        String size = reader.nextName();
+                        if(size.equals("thumbnail")){
+                            thumbnailUrl = reader.nextString();
+                        } else if(size.equals("smallThumbnail")){
+                            smallThumbnailUrl = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "infoLink":
+                    infoLink = reader.nextString();
+                    break;
+                case "industryIdentifiers":
+                    isbns = readIsbns(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new BookRecord(title, authors, publishedDate, thumbnailUrl, smallThumbnailUrl,
+                rating, infoLink, isbns);
+    }
+
+    /**
+     * Read the "industryIdentifiers" array and return its ISBNs. Other identifiers,
+     * such as OCLC numbers, are skipped.
+     */
+    private static List<String> readIsbns(JsonReader reader) throws IOException{
+        List<String> isbns = new ArrayList<>(2);
+        reader.beginArray();
+        while(reader.hasNext()){
+            String type = null;
+            String identifier = null;
+            reader.beginObject();
+            while(reader.hasNext()){
+                String name = reader.nextName();
+                if(reader.peek() == JsonToken.STRING && name.equals("type")){
+                    type = reader.nextString();
+                } else if(reader.peek() == JsonToken.STRING && name.equals("identifier")){
+                    identifier = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if(identifier != null && ("ISBN_13".equals(type) || "ISBN_10".equals(type))){
+                isbns.add(identifier);
+            }
+        }
+        reader.endArray();
+        return isbns;
+    }
+}
@@ -0,0 +1,65 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link CircuitBreaker}
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000);
+
+        for(int i = 0; i < 3; i++){
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getRejectedCount());
+    }
+
+    @Test
+    public void successResetsFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000);
+
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void letsOneTrialThroughAfterOpenTime() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 20);
+        breaker.recordFailure();
+        Thread.sleep(30);
+
+        assertTrue(breaker.allowRequest());
+        //Only one trial at a time
+        assertFalse(breaker.allowRequest());
+        breaker.recordSuccess();
+
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledTrialLetsAnotherThrough() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 20);
+        breaker.recordFailure();
+        Thread.sleep(30);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordCancelled();
+
+        //The cancelled trial said nothing about the host, so it is still open
+        assertTrue(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,287 @@
+package com.book_search.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link FederatedSearch} against local stub servers standing in for
+ * Google Books and Open Library
+ */
+public class FederatedSearchTest {
+
+    private static final String GOOGLE_RESPONSE = "{\"items\":["
+            + "{\"volumeInfo\":{\"title\":\"Dune\",\"authors\":[\"Frank Herbert\"],"
+            + "\"industryIdentifiers\":[{\"type\":\"ISBN_10\",\"identifier\":\"0441172717\"}]}},"
+            + "{\"volumeInfo\":{\"title\":\"Children of Dune\",\"authors\":[\"Frank Herbert\"]}}"
+            + "]}";
+
+    private static final String OPEN_LIBRARY_RESPONSE = "{\"numFound\":3,\"docs\":["
+            //Same edition as Google's first book, matched by ISBN despite the subtitle
+            + "{\"key\":\"/works/OL893415W\",\"title\":\"Dune: A Novel\","
+            + "\"author_name\":[\"Frank Herbert\"],\"isbn\":[\"9780441172719\",\"0340960191\"]},"
+            //Same as Google's second book, matched by title and author
+            + "{\"key\":\"/works/OL893526W\",\"title\":\"Children of Dune.\","
+            + "\"author_name\":[\"FRANK HERBERT\"]},"
+            + "{\"key\":\"/works/OL893527W\",\"title\":\"Dune Messiah\","
+            + "\"author_name\":[\"Frank Herbert\"],\"cover_i\":12345}"
+            + "]}";
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final UrlConnector mConnector = new UrlConnector(2000, 2000);
+    private HttpServer mServer;
+    private String mBaseUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+        mBaseUrl = "http://127.0.0.1:" + mServer.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void search_mergesSourcesWithoutDuplicates() throws IOException {
+        stub("/google", 200, GOOGLE_RESPONSE, 0);
+        stub("/openlibrary", 200, OPEN_LIBRARY_RESPONSE, 0);
+
+        List<BookRecord> books = newSearch(2000).search("dune", 0, 10, null, CancellationToken.NONE);
+
+        assertEquals(Arrays.asList("Dune", "Children of Dune", "Dune Messiah"), titles(books));
+        assertEquals("https://covers.openlibrary.org/b/id/12345-M.jpg",
+                books.get(2).getThumbnailUrl());
+    }
+
+    @Test
+    public void search_returnsFastSourceWhenOtherMissesDeadline() throws IOException {
+        stub("/google", 200, GOOGLE_RESPONSE, 0);
+        stub("/openlibrary", 200, OPEN_LIBRARY_RESPONSE, 1500);
+
+        long start = System.nanoTime();
+        List<BookRecord> books = newSearch(300).search("dune", 0, 10, null, CancellationToken.NONE);
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(Arrays.asList("Dune", "Children of Dune"), titles(books));
+        assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < 1200);
+    }
+
+    @Test
+    public void search_returnsOtherSourceWhenOneFails() throws IOException {
+        stub("/google", 500, "{}", 0);
+        stub("/openlibrary", 200, OPEN_LIBRARY_RESPONSE, 0);
+
+        List<BookRecord> books = newSearch(2000).search("dune", 0, 10, null, CancellationToken.NONE);
+
+        assertEquals(Arrays.asList("Dune: A Novel", "Children of Dune.", "Dune Messiah"),
+                titles(books));
+    }
+
+    @Test
+    public void searchPage_isCompleteOnlyWhenEverySourceRanOut() throws IOException {
+        stub("/google", 200, GOOGLE_RESPONSE, 0);
+        stub("/openlibrary", 200, OPEN_LIBRARY_RESPONSE, 0);
+        FederatedSearch search = newSearch(2000);
+
+        assertTrue(search.searchPage("dune", 0, 10, null, CancellationToken.NONE).isComplete());
+        //Open Library filled the page, so it may have more
+        assertFalse(search.searchPage("dune", 0, 3, null, CancellationToken.NONE).isComplete());
+    }
+
+    @Test
+    public void searchPage_isNotCompleteWhenASourceFails() throws IOException {
+        stub("/google", 500, "{}", 0);
+        stub("/openlibrary", 200, OPEN_LIBRARY_RESPONSE, 0);
+
+        assertFalse(newSearch(2000).searchPage("dune", 0, 10, null, CancellationToken.NONE)
+                .isComplete());
+    }
+
+    @Test
+    public void search_failsWhenEverySourceFails() {
+        stub("/google", 500, "{}", 0);
+        stub("/openlibrary", 404, "{}", 0);
+
+        try {
+            newSearch(2000).search("dune", 0, 10, null, CancellationToken.NONE);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e instanceof HttpStatusException);
+        }
+    }
+
+    @Test
+    public void search_publishesMergedProgress() throws IOException {
+        stub("/google", 200, GOOGLE_RESPONSE, 0);
+        stub("/openlibrary", 200, OPEN_LIBRARY_RESPONSE, 0);
+        final List<List<BookRecord>> published = new ArrayList<>();
+
+        List<BookRecord> books = newSearch(2000).search("dune", 0, 10,
+                new BookParser.Listener() {
+                    @Override
+                    public void onBooksParsed(List<BookRecord> books) {
+                        synchronized (published){
+                            published.add(books);
+                        }
+                    }
+                }, CancellationToken.NONE);
+
+        synchronized (published){
+            assertFalse(published.isEmpty());
+            assertEquals(titles(books), titles(published.get(published.size() - 1)));
+        }
+    }
+
+    @Test
+    public void search_stopsWhenCancelled() throws IOException {
+        stub("/google", 200, GOOGLE_RESPONSE, 1500);
+        stub("/openlibrary", 200, OPEN_LIBRARY_RESPONSE, 1500);
+        final CancellationToken token = new CancellationToken();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                token.cancel();
+            }
+        });
+
+        long start = System.nanoTime();
+        try {
+            newSearch(2000).search("dune", 0, 10, null, token);
+            fail();
+        } catch (CancelledException e) {
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < 1000);
+        }
+    }
+
+    @Test
+    public void search_cancelsSourceThatMissesDeadline() throws Exception {
+        stub("/google", 200, GOOGLE_RESPONSE, 0);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        BookSource slow = new BookSource() {
+            @Override
+            public String getName() {
+                return "slow";
+            }
+
+            @Override
+            public List<BookRecord> search(String query, int startIndex, int maxResults,
+                                           BookParser.Listener listener,
+                                           CancellationToken token) throws IOException {
+                try {
+                    if(token.await(5000)){
+                        stopped.countDown();
+                    }
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                token.throwIfCancelled();
+                return new ArrayList<>();
+            }
+        };
+        FederatedSearch search = new FederatedSearch(Arrays.<BookSource>asList(
+                new GoogleBooksSource(mConnector, mBaseUrl + "/google"), slow), mExecutor, 300);
+
+        List<BookRecord> books = search.search("dune", 0, 10, null, CancellationToken.NONE);
+
+        assertEquals(Arrays.asList("Dune", "Children of Dune"), titles(books));
+        //The late source is stopped rather than left running with the caller's token
+        assertTrue(stopped.await(1, TimeUnit.SECONDS));
+        assertEquals(0, search.getFailedSourceCount());
+    }
+
+    @Test
+    public void fetchBooks_abortsConnectionWhenCancelled() throws IOException {
+        stub("/google", 200, GOOGLE_RESPONSE, 1500);
+        final CancellationToken token = new CancellationToken();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                token.cancel();
+            }
+        });
+
+        long start = System.nanoTime();
+        try {
+            //No retries or waiting for other sources here, so only the abort unblocks it
+            BookFetcher.fetchBooks(mConnector, new URL(mBaseUrl + "/google"), false,
+                    null, VolumeParser.INSTANCE, null, token);
+            fail();
+        } catch (CancelledException e) {
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            assertTrue("Took " + elapsedMillis + "ms", elapsedMillis < 1000);
+        }
+    }
+
+    private FederatedSearch newSearch(long deadlineMillis){
+        List<BookSource> sources = Arrays.<BookSource>asList(
+                new GoogleBooksSource(mConnector, mBaseUrl + "/google"),
+                new OpenLibrarySource(mConnector, mBaseUrl + "/openlibrary"));
+        return new FederatedSearch(sources, mExecutor, deadlineMillis);
+    }
+
+    /**
+     * Makes the server answer requests to the path with the status and body, after
+     * the delay
+     */
+    private void stub(String path, final int status, String body, final long delayMillis){
+        final byte[] bytes = body.getBytes(Charset.forName("UTF-8"));
+        mServer.createContext(path, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, bytes.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(bytes);
+                output.close();
+            }
+        });
+    }
+
+    private static List<String> titles(List<BookRecord> books){
+        List<String> titles = new ArrayList<>(books.size());
+        for(BookRecord book : books){
+            titles.add(book.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,34 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link Isbn}
+ */
+public class IsbnTest {
+
+    @Test
+    public void toIsbn13_convertsIsbn10() {
+        assertEquals("9780441172719", Isbn.toIsbn13("0441172717"));
+        assertEquals("9780441172719", Isbn.toIsbn13("0-441-17271-7"));
+        assertEquals("9780804429573", Isbn.toIsbn13("0-8044-2957-x"));
+        assertEquals("9780441172719", Isbn.toIsbn13("978-0-441-17271-9"));
+    }
+
+    @Test
+    public void toIsbn13_rejectsXAnywhereButTheIsbn10CheckDigit() {
+        assertNull(Isbn.toIsbn13("123456789X123"));
+        assertNull(Isbn.toIsbn13("123456789X-1"));
+        assertNull(Isbn.toIsbn13("12345678X9"));
+        assertNull(Isbn.toIsbn13("978044117271X"));
+    }
+
+    @Test
+    public void toIsbn13_rejectsOtherLengthsAndCharacters() {
+        assertNull(Isbn.toIsbn13(null));
+        assertNull(Isbn.toIsbn13("044117271"));
+        assertNull(Isbn.toIsbn13("0441172717a"));
+    }
+}
@@ -0,0 +1,47 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link LatencyHistogram}
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueInOrder() {
+        int previous = -1;
+        for(long micros = 0; micros < 100000; micros++){
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(bucket == previous || bucket == previous + 1);
+            assertTrue(micros <= LatencyHistogram.upperBoundOf(bucket));
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        //1ms to 100ms, one of each
+        for(int millis = 1; millis <= 100; millis++){
+            histogram.recordNanos(millis * 1000000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getPercentileMillis(0.50), 50 * 0.25);
+        assertEquals(95, histogram.getPercentileMillis(0.95), 95 * 0.25);
+        assertEquals(99, histogram.getPercentileMillis(0.99), 99 * 0.25);
+    }
+
+    @Test
+    public void reset_forgetsDurations() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(5000000L);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMillis(0.5), 0);
+    }
+}
@@ -0,0 +1,68 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PrefixResultCache}
+ */
+public class PrefixResultCacheTest {
+
+    private static final PrefixResultCache.Matcher<String> TITLE_MATCHER =
+            new PrefixResultCache.Matcher<String>() {
+                @Override
+                public boolean matches(String title, List<String> terms) {
+                    return QueryNormalizer.matchesTermPrefixes(
+                            QueryNormalizer.normalize(title), terms);
+                }
+            };
+
+    @Test
+    public void get_returnsExactQueryWhateverItsSpelling() {
+        PrefixResultCache<String> cache = new PrefixResultCache<>(10, TITLE_MATCHER);
+        cache.put("Harry Potter", Arrays.asList("Harry Potter"), false);
+
+        PrefixResultCache.Hit<String> hit = cache.get("  HARRY potter ");
+
+        assertNotNull(hit);
+        assertEquals(Arrays.asList("Harry Potter"), hit.getItems());
+        assertFalse(hit.isComplete());
+    }
+
+    @Test
+    public void get_narrowsLongerQueryAtWordBoundaryWithoutClaimingCompleteness() {
+        PrefixResultCache<String> cache = new PrefixResultCache<>(10, TITLE_MATCHER);
+        cache.put("harry", Arrays.asList("Harry Potter", "Dirty Harry", "Harry Potter 2"), true);
+
+        PrefixResultCache.Hit<String> hit = cache.get("harry pot");
+
+        assertEquals("harry", hit.getQuery());
+        assertEquals(Arrays.asList("Harry Potter", "Harry Potter 2"), hit.getItems());
+        //The server may match "pot" in fields the matcher does not see
+        assertFalse(hit.isComplete());
+    }
+
+    @Test
+    public void get_doesNotNarrowInsideAWord() {
+        PrefixResultCache<String> cache = new PrefixResultCache<>(10, TITLE_MATCHER);
+        cache.put("harr", Arrays.asList("Harriet"), true);
+
+        assertNull(cache.get("harry"));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedQuery() {
+        PrefixResultCache<String> cache = new PrefixResultCache<>(2, TITLE_MATCHER);
+        cache.put("dune", Arrays.asList("Dune"), true);
+        cache.put("emma", Arrays.asList("Emma"), true);
+        cache.get("dune");
+        cache.put("ulysses", Arrays.asList("Ulysses"), true);
+
+        assertNotNull(cache.get("dune"));
+        assertNull(cache.get("emma"));
+    }
+}
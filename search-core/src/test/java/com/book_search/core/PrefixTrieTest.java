@@ -0,0 +1,48 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PrefixTrie}
+ */
+public class PrefixTrieTest {
+
+    @Test
+    public void suggest_returnsHeaviestCompletionsFirst() {
+        PrefixTrie trie = new PrefixTrie(100);
+        trie.add("Harry Potter", 1);
+        trie.add("Harry Potter and the Goblet of Fire", 1);
+        trie.add("harry  potter", 5);
+        trie.add("Hamlet", 10);
+
+        assertEquals(Arrays.asList("Harry Potter", "Harry Potter and the Goblet of Fire"),
+                trie.suggest("HARRY", 5));
+        assertEquals(Arrays.asList("Hamlet", "Harry Potter"), trie.suggest("ha", 2));
+        assertEquals(3, trie.size());
+    }
+
+    @Test
+    public void suggest_returnsNothingForUnknownPrefix() {
+        PrefixTrie trie = new PrefixTrie(100);
+        trie.add("Dune", 1);
+
+        assertTrue(trie.suggest("dusk", 5).isEmpty());
+    }
+
+    @Test
+    public void add_dropsNewTermsOnceFull() {
+        PrefixTrie trie = new PrefixTrie(2);
+        trie.add("Dune", 1);
+        trie.add("Dune Messiah", 1);
+        trie.add("Children of Dune", 1);
+        trie.add("Dune Messiah", 5);
+
+        assertEquals(2, trie.size());
+        assertEquals(Arrays.asList("Dune Messiah", "Dune"), trie.suggest("dune", 5));
+        assertTrue(trie.suggest("children", 5).isEmpty());
+    }
+}
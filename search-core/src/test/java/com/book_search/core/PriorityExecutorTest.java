@@ -0,0 +1,127 @@
+package com.book_search.core;
+
+import com.book_search.core.PriorityExecutor.Priority;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PriorityExecutor}
+ */
+public class PriorityExecutorTest {
+
+    private PriorityExecutor mExecutor;
+    private CountDownLatch mRelease;
+    private List<String> mOrder;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mExecutor = new PriorityExecutor("test", 1, null);
+        mOrder = Collections.synchronizedList(new ArrayList<String>());
+
+        //Keep the only thread busy so every later task is queued
+        mRelease = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void runsMostUrgentFirstAndInOrderWithinPriority() throws Exception {
+        submit("prefetch", Priority.PREFETCH);
+        submit("offscreen", Priority.OFFSCREEN);
+        submit("visible1", Priority.VISIBLE);
+        Future<String> last = submit("visible2", Priority.VISIBLE);
+
+        assertEquals(4, mExecutor.getQueueDepth());
+        assertEquals(2, mExecutor.getQueueDepth(Priority.VISIBLE));
+        mRelease.countDown();
+        drain();
+
+        assertEquals(Arrays.asList("visible1", "visible2", "offscreen", "prefetch"), mOrder);
+        assertEquals("visible2", last.get());
+        //The task keeping the thread busy ran with visible priority too
+        assertEquals(3, mExecutor.getWaitTimes(Priority.VISIBLE).getCount());
+        assertTrue(mExecutor.getMaxQueueDepth() >= 4);
+    }
+
+    @Test
+    public void setPriority_movesQueuedTask() throws Exception {
+        submit("offscreen", Priority.OFFSCREEN);
+        Future<String> promoted = submit("promoted", Priority.PREFETCH);
+        Future<String> demoted = submit("demoted", Priority.VISIBLE);
+
+        assertTrue(mExecutor.setPriority(promoted, Priority.VISIBLE));
+        assertTrue(mExecutor.setPriority(demoted, Priority.PREFETCH));
+        //Raising never lowers
+        assertFalse(mExecutor.raisePriority(promoted, Priority.OFFSCREEN));
+        mRelease.countDown();
+        drain();
+
+        assertEquals(Arrays.asList("promoted", "offscreen", "demoted"), mOrder);
+        //Tasks that already ran can't be moved
+        assertFalse(mExecutor.setPriority(promoted, Priority.PREFETCH));
+    }
+
+    @Test
+    public void cancelledTasksAreNotCounted() throws Exception {
+        Future<String> cancelled = submit("cancelled", Priority.VISIBLE);
+        submit("kept", Priority.VISIBLE);
+
+        cancelled.cancel(false);
+
+        assertEquals(1, mExecutor.getQueueDepth());
+        mRelease.countDown();
+        drain();
+        assertEquals(Arrays.asList("kept"), mOrder);
+    }
+
+    private Future<String> submit(final String name, Priority priority){
+        return mExecutor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                mOrder.add(name);
+                return name;
+            }
+        }, priority);
+    }
+
+    /**
+     * Waits for every queued task to run, by queueing the least urgent task last
+     */
+    private void drain() throws Exception {
+        mExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }, Priority.PREFETCH).get(5, TimeUnit.SECONDS);
+    }
+}
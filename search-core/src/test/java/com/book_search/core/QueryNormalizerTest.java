@@ -0,0 +1,52 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link QueryNormalizer}
+ */
+public class QueryNormalizerTest {
+
+    @Test
+    public void normalize_foldsCaseAndWhitespace() {
+        assertEquals("harry potter", QueryNormalizer.normalize("Harry Potter"));
+        assertEquals("harry potter", QueryNormalizer.normalize(" harry  potter "));
+        assertEquals("harry potter", QueryNormalizer.normalize("HARRY\tPOTTER\n"));
+    }
+
+    @Test
+    public void normalize_foldsCompatibilityCharacters() {
+        //Full-width letters and a decomposed accent
+        assertEquals("caf\u00e9", QueryNormalizer.normalize("\uff23\uff41\uff46e\u0301"));
+        assertEquals("", QueryNormalizer.normalize(null));
+        assertEquals("", QueryNormalizer.normalize("   "));
+    }
+
+    @Test
+    public void terms_splitsNormalizedQuery() {
+        assertEquals(Arrays.asList("harry", "potter"), QueryNormalizer.terms("harry potter"));
+        assertTrue(QueryNormalizer.terms("").isEmpty());
+    }
+
+    @Test
+    public void matchesTermPrefixes_requiresEveryTermToStartAWord() {
+        assertTrue(QueryNormalizer.matchesTermPrefixes("harry potter and the goblet of fire",
+                Arrays.asList("harry", "gob")));
+        assertFalse(QueryNormalizer.matchesTermPrefixes("harry potter",
+                Arrays.asList("harry", "otter")));
+    }
+
+    @Test
+    public void matchesTermPrefixes_splitsWordsOnPunctuation() {
+        assertTrue(QueryNormalizer.matchesTermPrefixes("harry potter (illustrated edition)",
+                Arrays.asList("illus")));
+        assertTrue(QueryNormalizer.matchesTermPrefixes("potter:the prisoner",
+                Arrays.asList("the")));
+        assertFalse(QueryNormalizer.matchesTermPrefixes("potter:the prisoner",
+                Arrays.asList("otter")));
+    }
+}
@@ -0,0 +1,123 @@
+package com.book_search.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link RequestPolicy}
+ */
+public class RequestPolicyTest {
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void execute_retriesTransientFailures() throws IOException {
+        RequestPolicy policy = new RequestPolicy(3, 1, 5);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        String result = policy.execute(new RequestPolicy.Request<String>() {
+            @Override
+            public String attempt(boolean hedge, CancellationToken token) throws IOException {
+                if(attempts.incrementAndGet() < 3){
+                    throw new HttpStatusException(503, "http://example.com");
+                }
+                return "ok";
+            }
+        }, mExecutor);
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2, policy.getRetryCount());
+    }
+
+    @Test
+    public void execute_doesNotRetryClientErrors() {
+        RequestPolicy policy = new RequestPolicy(3, 1, 5);
+        final AtomicInteger attempts = new AtomicInteger();
+
+        try {
+            policy.execute(new RequestPolicy.Request<String>() {
+                @Override
+                public String attempt(boolean hedge, CancellationToken token) throws IOException {
+                    attempts.incrementAndGet();
+                    throw new HttpStatusException(404, "http://example.com");
+                }
+            }, mExecutor);
+            fail();
+        } catch (IOException e) {
+            assertEquals(404, ((HttpStatusException) e).getStatusCode());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void execute_hedgesSlowAttempts() throws Exception {
+        RequestPolicy policy = new RequestPolicy(1, 1, 5);
+        policy.setHedging(0.95, 20);
+        RequestPolicy.Request<String> fast = new RequestPolicy.Request<String>() {
+            @Override
+            public String attempt(boolean hedge, CancellationToken token) {
+                return "fast";
+            }
+        };
+        //Build up the latency the hedge delay is based on
+        for(int i = 0; i < 20; i++){
+            policy.execute(fast, mExecutor);
+        }
+
+        final CountDownLatch loserStopped = new CountDownLatch(1);
+        String result = policy.execute(new RequestPolicy.Request<String>() {
+            @Override
+            public String attempt(boolean hedge, CancellationToken token) throws IOException {
+                if(!hedge){
+                    //Like a blocked read, this ignores interrupts and only stops when
+                    //the attempt's token is cancelled
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                    while(!token.isCancelled() && System.nanoTime() < deadline){
+                        try {
+                            token.await(10);
+                        } catch (InterruptedException e) {
+                            //Ignored, as by a read
+                        }
+                    }
+                    if(token.isCancelled()){
+                        loserStopped.countDown();
+                    }
+                    token.throwIfCancelled();
+                    return "primary";
+                }
+                return "hedge";
+            }
+        }, mExecutor);
+
+        assertEquals("hedge", result);
+        assertEquals(1, policy.getHedgeCount());
+        assertEquals(1, policy.getHedgeWinCount());
+        //The losing attempt is stopped rather than left to finish
+        assertTrue(loserStopped.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void backoff_staysWithinBounds() {
+        RequestPolicy policy = new RequestPolicy(5, 100, 400);
+        for(int attempt = 0; attempt < 10; attempt++){
+            long backoff = policy.backoffMillis(attempt);
+            assertTrue(backoff >= 0);
+            assertTrue(backoff <= Math.min(400, 100 << attempt));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ResultStore}
+ */
+public class ResultStoreTest {
+
+    //Results are "title|rating|year", with empty fields for missing ones
+    private static final ResultStore.Fields<String> FIELDS = new ResultStore.Fields<String>() {
+        @Override
+        public String getKey(String item) {
+            return getTitle(item);
+        }
+
+        @Override
+        public String getTitle(String item) {
+            return item.split("\\|", -1)[0];
+        }
+
+        @Override
+        public float getRating(String item) {
+            String rating = item.split("\\|", -1)[1];
+            return rating.isEmpty() ? Float.NaN : Float.parseFloat(rating);
+        }
+
+        @Override
+        public String getPublishedDate(String item) {
+            return item.split("\\|", -1)[2];
+        }
+    };
+
+    @Test
+    public void setOrder_sortsByPrecomputedKeysWithMissingValuesLast() {
+        ResultStore<String> store = new ResultStore<>(FIELDS);
+        store.setItems(Arrays.asList("Cosmos||1980", "Arrival|4.5|", "Blindsight|3|2006-10-03"));
+
+        assertEquals(Arrays.asList("Arrival|4.5|", "Blindsight|3|2006-10-03", "Cosmos||1980"),
+                store.setOrder(ResultStore.Order.RATING));
+        assertEquals(Arrays.asList("Blindsight|3|2006-10-03", "Cosmos||1980", "Arrival|4.5|"),
+                store.setOrder(ResultStore.Order.NEWEST));
+        assertEquals(Arrays.asList("Arrival|4.5|", "Blindsight|3|2006-10-03", "Cosmos||1980"),
+                store.setOrder(ResultStore.Order.TITLE));
+        //Relevance is the order the results were loaded in
+        assertEquals(Arrays.asList("Cosmos||1980", "Arrival|4.5|", "Blindsight|3|2006-10-03"),
+                store.setOrder(ResultStore.Order.RELEVANCE));
+    }
+
+    @Test
+    public void setFilter_hidesUnratedAndOlderResultsWithoutDroppingThem() {
+        ResultStore<String> store = new ResultStore<>(FIELDS);
+        store.setItems(Arrays.asList("Cosmos||1980", "Arrival|4.5|", "Blindsight|3|2006"));
+
+        assertEquals(Arrays.asList("Blindsight|3|2006"),
+                store.setFilter(new ResultStore.Filter(2000, true)));
+        assertEquals(Arrays.asList("Arrival|4.5|", "Blindsight|3|2006"),
+                store.setFilter(new ResultStore.Filter(0, true)));
+        assertEquals(3, store.size());
+        assertEquals(3, store.setFilter(ResultStore.Filter.NONE).size());
+    }
+
+    @Test
+    public void setQuery_ranksCloserTitleMatchesFirst() {
+        ResultStore<String> store = new ResultStore<>(FIELDS);
+        store.setQuery("Dune");
+        List<String> shown = store.setItems(Arrays.asList(
+                "Frank Herbert Biography||", "The Road to Dune||", "Dune Messiah||", "Dune||"));
+
+        assertEquals(Arrays.asList(
+                "Dune||", "Dune Messiah||", "The Road to Dune||", "Frank Herbert Biography||"),
+                shown);
+    }
+
+    @Test
+    public void setItems_mergesNewPagesIntoTheCurrentOrder() {
+        ResultStore<String> store = new ResultStore<>(FIELDS);
+        store.setOrder(ResultStore.Order.RATING);
+        List<String> firstPage = Arrays.asList("A|2|", "B|4|");
+        store.setItems(firstPage);
+
+        List<String> bothPages = new ArrayList<>(firstPage);
+        bothPages.addAll(Arrays.asList("C|5|", "D|3|", "A|2|"));
+        List<String> shown = store.setItems(bothPages);
+
+        assertEquals(Arrays.asList("C|5|", "B|4|", "D|3|", "A|2|"), shown);
+        //Only setting the order sorted everything, the pages were merged in
+        assertTrue(store.toString().contains("fullSorts=1"));
+
+        //A result that changed sorts everything again
+        shown = store.setItems(Arrays.asList("A|4.5|", "B|4|", "C|5|", "D|3|"));
+        assertEquals(Arrays.asList("C|5|", "A|4.5|", "B|4|", "D|3|"), shown);
+    }
+}
@@ -0,0 +1,103 @@
+package com.book_search.core;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link VolumeParser}
+ */
+public class VolumeParserTest {
+
+    private static final String RESPONSE = "{\"kind\":\"books#volumes\",\"totalItems\":3,"
+            + "\"items\":["
+            + "{\"id\":\"a\",\"volumeInfo\":{\"title\":\"Effective Java\","
+            + "\"authors\":[\"Joshua Bloch\"],\"publishedDate\":\"2008-05-08\","
+            + "\"averageRating\":4.5,\"imageLinks\":{\"smallThumbnail\":\"s\",\"thumbnail\":\"t\"},"
+            + "\"infoLink\":\"http://books.google.com/books?id=a\"},\"saleInfo\":{\"country\":\"US\"}},"
+            + "{\"id\":\"b\",\"volumeInfo\":{\"title\":\"Java Concurrency in Practice\","
+            + "\"authors\":[\"Brian Goetz\",\"Tim Peierls\"],\"publishedDate\":\"2006\","
+            + "\"description\":null}},"
+            + "{\"id\":\"c\"}"
+            + "]}";
+
+    @Test
+    public void parse_readsBookFields() throws IOException {
+        List<BookRecord> books = VolumeParser.parse(new StringReader(RESPONSE), null);
+
+        assertEquals(2, books.size());
+        BookRecord first = books.get(0);
+        assertEquals("Effective Java", first.getTitle());
+        assertEquals(Arrays.asList("Joshua Bloch"), first.getAuthors());
+        assertEquals("2008-05-08", first.getPublishedDate());
+        assertEquals(4.5f, first.getRating(), 0f);
+        assertEquals("t", first.getThumbnailUrl());
+        assertEquals("s", first.getSmallThumbnailUrl());
+        assertEquals("http://books.google.com/books?id=a", first.getInfoLink());
+
+        BookRecord second = books.get(1);
+        assertEquals(Arrays.asList("Brian Goetz", "Tim Peierls"), second.getAuthors());
+        assertTrue(Float.isNaN(second.getRating()));
+        assertNull(second.getThumbnailUrl());
+        assertNull(second.getSmallThumbnailUrl());
+    }
+
+    @Test
+    public void parse_keepsBooksBeforeMalformedJson() throws IOException {
+        String malformed = RESPONSE.substring(0, RESPONSE.indexOf("{\"id\":\"b\""))
+                + "{\"id\":nope}]}";
+
+        List<BookRecord> books = VolumeParser.parse(new StringReader(malformed), null);
+
+        assertEquals(1, books.size());
+        assertEquals("Effective Java", books.get(0).getTitle());
+    }
+
+    @Test(expected = EOFException.class)
+    public void parse_failsOnTruncatedResponse() throws IOException {
+        //A transfer that stopped part way must not pass for a short page
+        String truncated = RESPONSE.substring(0, RESPONSE.indexOf("{\"id\":\"b\""));
+
+        VolumeParser.parse(new StringReader(truncated), null);
+    }
+
+    @Test
+    public void parse_publishesBatches() throws IOException {
+        StringBuilder response = new StringBuilder("{\"items\":[");
+        for(int i = 0; i < 12; i++){
+            if(i > 0){
+                response.append(',');
+            }
+            response.append("{\"volumeInfo\":{\"title\":\"Book ").append(i).append("\"}}");
+        }
+        response.append("]}");
+        final List<Integer> batchSizes = new ArrayList<>();
+
+        VolumeParser.parse(new StringReader(response.toString()), new BookParser.Listener() {
+            @Override
+            public void onBooksParsed(List<BookRecord> books) {
+                batchSizes.add(books.size());
+            }
+        });
+
+        assertEquals(Arrays.asList(5, 10), batchSizes);
+    }
+
+    @Test
+    public void buildSearchUrl_encodesQuery() {
+        String url = GoogleBooksApi.buildSearchUrl("java & android");
+
+        assertEquals("https://www.googleapis.com/books/v1/volumes?q=java+%26+android", url);
+        String page = GoogleBooksApi.pageUrl(url, 20, 10);
+        assertTrue(page.startsWith(url + "&startIndex=20&maxResults=10&fields="));
+        //The selector is encoded so its parentheses and commas survive as one parameter
+        assertTrue(page.contains("imageLinks%28smallThumbnail%2Cthumbnail%29"));
+    }
+}